@@ -18,7 +18,9 @@
 
 package com.facebook.notifications.sample;
 
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -30,15 +32,35 @@ import com.google.android.gms.gcm.GcmListenerService;
  */
 public class MyGcmListenerService extends GcmListenerService {
   private static final String LOG_TAG = MyGcmListenerService.class.getCanonicalName();
+  private static final String PREFERENCES_NAME = "notification_jobs";
+  private static final String NEXT_JOB_KEY = "next_job";
+
+  // The sample schedules no other jobs, so a range of ids is reserved for notifications. Each push
+  // takes the next id in the range, so that it doesn't replace one which is still waiting to run.
+  private static final int NOTIFICATION_JOB_ID_BASE = 1000;
+  private static final int NOTIFICATION_JOB_ID_COUNT = 100;
 
   @Override
   public void onMessageReceived(String from, final Bundle data) {
     Log.v(LOG_TAG, "onMessageReceived(" + from + ", " + data + ")");
 
-    NotificationsManager.presentNotification(
+    // Present from a job, so that downloading the card doesn't hold up this service.
+    NotificationsManager.schedulePresentNotification(
       this,
+      nextNotificationJobId(),
       data,
       new Intent(getApplicationContext(), MainActivity.class)
     );
   }
+
+  /**
+   * Take the next job id from the reserved range. The counter is kept in preferences, as jobs may
+   * still be waiting after the process has been restarted.
+   */
+  private synchronized int nextNotificationJobId() {
+    SharedPreferences preferences = getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    int next = preferences.getInt(NEXT_JOB_KEY, 0);
+    preferences.edit().putInt(NEXT_JOB_KEY, (next + 1) % NOTIFICATION_JOB_ID_COUNT).apply();
+    return NOTIFICATION_JOB_ID_BASE + next;
+  }
 }
@@ -24,27 +24,41 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.facebook.notifications.internal.activity.CardActivity;
-import com.facebook.notifications.internal.appevents.AppEventsLogger;
 import com.facebook.notifications.internal.asset.Asset;
 import com.facebook.notifications.internal.asset.AssetManager;
 import com.facebook.notifications.internal.asset.handlers.BitmapAssetHandler;
 import com.facebook.notifications.internal.asset.handlers.ColorAssetHandler;
 import com.facebook.notifications.internal.asset.handlers.GifAssetHandler;
+import com.facebook.notifications.internal.asset.handlers.WebPAssetHandler;
 import com.facebook.notifications.internal.configuration.CardConfiguration;
+import com.facebook.notifications.internal.configuration.HeroConfiguration;
+import com.facebook.notifications.internal.configuration.NotificationPayload;
 import com.facebook.notifications.internal.content.ContentManager;
+import com.facebook.notifications.internal.job.PresentNotificationJobService;
 import com.facebook.notifications.internal.utilities.Version;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Manages incoming remote notifications for push card presentation.
  */
@@ -58,6 +72,15 @@ public final class NotificationsManager {
     void onError(@NonNull Exception exception);
   }
 
+  /**
+   * Represents handlers to be invoked when presentation of a notification is completed.
+   */
+  public interface PresentCallback {
+    void onPresented();
+
+    void onError(@NonNull Exception exception);
+  }
+
   /**
    * Allows for customizing of notifications before they are displayed.
    */
@@ -96,63 +119,106 @@ public final class NotificationsManager {
   private static final AssetManager ASSET_MANAGER = new AssetManager();
   private static final ContentManager CONTENT_MANAGER = new ContentManager();
 
+  // Preparing a card parses its payload and schedules its downloads, then extracts its posters once
+  // they have arrived. A couple of threads keep up with a burst of pushes, as long as the burst is
+  // not allowed to queue without bound.
+  private static final int PREPARE_THREAD_COUNT = 2;
+  private static final int PREPARE_QUEUE_CAPACITY = 32;
+  private static final ThreadPoolExecutor DEFAULT_PREPARE_EXECUTOR = new ThreadPoolExecutor(
+    PREPARE_THREAD_COUNT, PREPARE_THREAD_COUNT,
+    30, TimeUnit.SECONDS,
+    new ArrayBlockingQueue<Runnable>(PREPARE_QUEUE_CAPACITY)
+  );
+  private static volatile @NonNull Executor prepareExecutor = DEFAULT_PREPARE_EXECUTOR;
+
   static {
+    // Don't keep preparing threads around while there's nothing to prepare.
+    DEFAULT_PREPARE_EXECUTOR.allowCoreThreadTimeOut(true);
+
     ASSET_MANAGER.registerHandler(BitmapAssetHandler.TYPE, new BitmapAssetHandler());
     ASSET_MANAGER.registerHandler(ColorAssetHandler.TYPE, new ColorAssetHandler());
     ASSET_MANAGER.registerHandler(GifAssetHandler.TYPE, new GifAssetHandler());
+    ASSET_MANAGER.registerHandler(WebPAssetHandler.TYPE, new WebPAssetHandler());
   }
 
   private NotificationsManager() {
   }
 
+  /**
+   * Parse the payload of a notification bundle. This is the only place a bundle is parsed.
+   *
+   * @return The payload, or null if the bundle has no card.
+   */
   @Nullable
-  private static JSONObject getPushJSON(@NonNull Bundle bundle) throws JSONException {
-    String pushPayload = bundle.getString(PUSH_PAYLOAD_KEY);
-    if (pushPayload == null) {
-      return null;
-    }
-    return new JSONObject(pushPayload);
-  }
-
-  @Nullable
-  private static JSONObject getCardJSON(@NonNull Bundle bundle) throws JSONException {
+  private static NotificationPayload getPayload(@NonNull Bundle bundle) throws JSONException {
     String cardPayload = bundle.getString(CARD_PAYLOAD_KEY);
     if (cardPayload == null) {
       return null;
     }
 
-    return new JSONObject(cardPayload);
+    return new NotificationPayload(cardPayload, bundle.getString(PUSH_PAYLOAD_KEY));
+  }
+
+  private static boolean isVersionSupported(@NonNull NotificationPayload payload) {
+    Version cardVersion = payload.getVersion();
+    return cardVersion != null && cardVersion.compareTo(PAYLOAD_VERSION_OBJECT) <= 0;
   }
 
   @Nullable
-  private static Intent intentForBundle(
+  private static Intent intentForPayload(
     @NonNull Context context,
-    @Nullable JSONObject pushJSON,
-    @NonNull JSONObject cardJSON,
+    @NonNull NotificationPayload payload,
     @NonNull AssetManager assetManager,
     @NonNull ContentManager contentManager
-  ) throws JSONException {
-    Version cardVersion = Version.parse(cardJSON.optString("version"));
-
-    if (cardVersion == null || cardVersion.compareTo(PAYLOAD_VERSION_OBJECT) > 0) {
+  ) {
+    if (!isVersionSupported(payload)) {
       return null;
     }
 
     Intent intent = new Intent(context, CardActivity.class);
 
-    if (pushJSON != null) {
-      String campaignIdentifier = AppEventsLogger.getCampaignIdentifier(pushJSON);
-      if (campaignIdentifier != null) {
-        intent.putExtra(CardActivity.EXTRA_CAMPAIGN_IDENTIFIER, campaignIdentifier);
-      }
+    String campaignIdentifier = payload.getCampaignIdentifier();
+    if (campaignIdentifier != null) {
+      intent.putExtra(CardActivity.EXTRA_CAMPAIGN_IDENTIFIER, campaignIdentifier);
     }
     intent.putExtra(CardActivity.EXTRA_ASSET_MANAGER, assetManager);
     intent.putExtra(CardActivity.EXTRA_CONTENT_MANAGER, contentManager);
-    intent.putExtra(CardActivity.EXTRA_CARD_PAYLOAD, cardJSON.toString());
+    intent.putExtra(CardActivity.EXTRA_CARD_PAYLOAD, payload.getCardPayload());
 
     return intent;
   }
 
+  /**
+   * Get the background of the hero of a card, if it is an asset that can have a poster.
+   */
+  @Nullable
+  private static AssetManager.PosterAsset getHeroPosterAsset(@Nullable CardConfiguration configuration) {
+    if (configuration == null) {
+      return null;
+    }
+
+    HeroConfiguration heroConfiguration = configuration.getHeroConfiguration();
+    if (heroConfiguration == null) {
+      return null;
+    }
+
+    Asset background = heroConfiguration.getBackground();
+    if (!(background instanceof AssetManager.PosterAsset)) {
+      return null;
+    }
+    return (AssetManager.PosterAsset) background;
+  }
+
+  /**
+   * Get the poster of the hero of a prepared card, if its background has one.
+   */
+  @Nullable
+  private static Bitmap getHeroPoster(@NonNull Intent presentationIntent) {
+    CardConfiguration configuration = presentationIntent.getParcelableExtra(CardActivity.EXTRA_CONFIGURATION);
+    AssetManager.PosterAsset posterAsset = getHeroPosterAsset(configuration);
+    return posterAsset != null ? posterAsset.getPoster() : null;
+  }
+
   @NonNull
   private static AssetManager getAssetManager(@NonNull Context context) {
     AssetManager manager = new AssetManager(ASSET_MANAGER);
@@ -167,6 +233,44 @@ public final class NotificationsManager {
     return manager;
   }
 
+  /**
+   * Set the executor used to prepare cards, for both {@code prepareCard()} and
+   * {@code presentNotification()}.
+   * <p/>
+   * By default, cards are prepared on a shared pool of two threads, which queues up to 32 cards
+   * before rejecting more.
+   *
+   * @param executor The executor to prepare cards on, or null to use the default executor.
+   */
+  public static void setPrepareExecutor(@Nullable Executor executor) {
+    prepareExecutor = executor != null ? executor : DEFAULT_PREPARE_EXECUTOR;
+  }
+
+  /**
+   * Set what the default executor does with cards prepared while its queue is full.
+   * <p/>
+   * By default, such cards are rejected and the {@link PrepareCallback#onError(Exception)} of
+   * their callback is invoked. Note that a policy which silently discards cards, such as
+   * {@link ThreadPoolExecutor.DiscardPolicy}, also discards their callbacks.
+   *
+   * @param policy The policy to apply to cards which can not be queued.
+   */
+  public static void setPrepareRejectionPolicy(@NonNull RejectedExecutionHandler policy) {
+    DEFAULT_PREPARE_EXECUTOR.setRejectedExecutionHandler(policy);
+  }
+
+  /**
+   * Invoke a callback on the thread of a handler, or right away on the current thread if there is
+   * no handler.
+   */
+  private static void dispatch(@Nullable Handler handler, @NonNull Runnable runnable) {
+    if (handler != null) {
+      handler.post(runnable);
+    } else {
+      runnable.run();
+    }
+  }
+
   /**
    * Returns whether or not a notification bundle has a valid push payload.
    *
@@ -185,15 +289,13 @@ public final class NotificationsManager {
    */
   public static boolean presentCard(@NonNull Activity activity, @NonNull Bundle notificationBundle) {
     try {
-      JSONObject cardJSON = getCardJSON(notificationBundle);
-      if (cardJSON == null) {
+      NotificationPayload payload = getPayload(notificationBundle);
+      if (payload == null) {
         return false;
       }
 
-      JSONObject pushJSON = getPushJSON(notificationBundle);
-
-      Intent presentationIntent = intentForBundle(activity,
-        pushJSON, cardJSON,
+      Intent presentationIntent = intentForPayload(activity,
+        payload,
         getAssetManager(activity), getContentManager(activity)
       );
       if (presentationIntent == null) {
@@ -222,57 +324,78 @@ public final class NotificationsManager {
     @NonNull final Bundle notificationBundle,
     @NonNull final PrepareCallback callback
   ) {
-    final Handler handler = new Handler();
+    prepareCard(context, notificationBundle, callback, false);
+  }
+
+  /**
+   * Prepare and pre-load a notification bundle into memory.
+   *
+   * @param context            The current context of your program. Usually an activity, application, or
+   *                           service context.
+   * @param notificationBundle The bundle containing the notification payload to present
+   * @param callback           The callback to invoke once preparation is complete. This is guaranteed to be
+   *                           invoked on the same thread as this method is invoked from.
+   * @param decodeAssets       Whether or not to also decode the images of the card into memory before
+   *                           invoking the callback. This makes the card display without any decoding
+   *                           delay, at the cost of holding the decoded images in memory until then.
+   */
+  public static void prepareCard(
+    @NonNull final Context context,
+    @NonNull final Bundle notificationBundle,
+    @NonNull final PrepareCallback callback,
+    final boolean decodeAssets
+  ) {
+    prepareCard(context, notificationBundle, null, callback, decodeAssets, new Handler());
+  }
+
+  /**
+   * Prepare and pre-load a notification bundle into memory on the prepare executor.
+   *
+   * @param parsedPayload The payload of the bundle, if it has already been parsed.
+   * @param handler The handler to invoke the callback on, or null to invoke it on whichever thread
+   *                finishes preparing the card.
+   */
+  private static void prepareCard(
+    @NonNull final Context context,
+    @NonNull final Bundle notificationBundle,
+    @Nullable final NotificationPayload parsedPayload,
+    @NonNull final PrepareCallback callback,
+    final boolean decodeAssets,
+    @Nullable final Handler handler
+  ) {
     final AssetManager assetManager = getAssetManager(context);
     final ContentManager contentManager = getContentManager(context);
 
     // Cache and prepare in background.
-    new Thread() {
+    Runnable prepareTask = new Runnable() {
       @Override
       public void run() {
         try {
-          JSONObject cardJSON = getCardJSON(notificationBundle);
-          if (cardJSON == null) {
+          final NotificationPayload payload = parsedPayload != null ? parsedPayload : getPayload(notificationBundle);
+          if (payload == null) {
             throw new NullPointerException("No content present in the notification bundle.");
           }
-          Version cardVersion = Version.parse(cardJSON.optString("version"));
-          if (cardVersion == null || cardVersion.compareTo(PAYLOAD_VERSION_OBJECT) > 0) {
-            throw new Exception("Payload version " + cardVersion + " not supported by this version of the notifications SDK.");
+          if (!isVersionSupported(payload)) {
+            throw new Exception("Payload version " + payload.getVersion() + " not supported by this version of the notifications SDK.");
           }
 
-          assetManager.cachePayload(cardJSON, new AssetManager.CacheCompletionCallback() {
+          assetManager.cachePayload(payload.getCard(), new AssetManager.CacheCompletionCallback() {
             @Override
-            public void onCacheCompleted(@NonNull JSONObject payload) {
+            public void onCacheCompleted(@NonNull final JSONObject cardJSON) {
               assetManager.stopCaching();
 
-              try {
-                JSONObject cardJSON = getCardJSON(notificationBundle);
-                final Intent presentIntent = intentForBundle(context, getPushJSON(notificationBundle), cardJSON, assetManager, contentManager);
-                if (presentIntent == null) {
-                  throw new NullPointerException("presentIntent was null, this should never happen!");
+              // This is invoked on the download thread, leave it to download. Reading and decoding the
+              // cached files happens back on the prepare executor.
+              executePrepareTask(new Runnable() {
+                @Override
+                public void run() {
+                  finishPreparing(context, payload, cardJSON, assetManager, contentManager, callback, decodeAssets, handler);
                 }
-
-                CardConfiguration configuration = new CardConfiguration(cardJSON, assetManager, contentManager);
-                presentIntent.putExtra(CardActivity.EXTRA_CONFIGURATION, configuration);
-
-                handler.post(new Runnable() {
-                  @Override
-                  public void run() {
-                    callback.onPrepared(presentIntent);
-                  }
-                });
-              } catch (final Exception ex) {
-                handler.post(new Runnable() {
-                  @Override
-                  public void run() {
-                    callback.onError(ex);
-                  }
-                });
-              }
+              }, callback, handler);
             }
           });
         } catch (final Exception ex) {
-          handler.post(new Runnable() {
+          dispatch(handler, new Runnable() {
             @Override
             public void run() {
               callback.onError(ex);
@@ -280,7 +403,98 @@ public final class NotificationsManager {
           });
         }
       }
-    }.start();
+    };
+
+    executePrepareTask(prepareTask, callback, handler);
+  }
+
+  /**
+   * Run a task on the prepare executor, failing the preparation if the executor rejects it.
+   */
+  private static void executePrepareTask(
+    @NonNull Runnable task,
+    @NonNull final PrepareCallback callback,
+    @Nullable Handler handler
+  ) {
+    try {
+      prepareExecutor.execute(task);
+    } catch (final RejectedExecutionException ex) {
+      dispatch(handler, new Runnable() {
+        @Override
+        public void run() {
+          callback.onError(ex);
+        }
+      });
+    }
+  }
+
+  /**
+   * Build the presentation intent of a card whose assets have been cached, and decode what it
+   * needs. Runs on the prepare executor.
+   */
+  private static void finishPreparing(
+    @NonNull Context context,
+    @NonNull NotificationPayload payload,
+    @NonNull JSONObject cardJSON,
+    @NonNull AssetManager assetManager,
+    @NonNull ContentManager contentManager,
+    @NonNull final PrepareCallback callback,
+    boolean decodeAssets,
+    @Nullable final Handler handler
+  ) {
+    try {
+      final Intent presentIntent = intentForPayload(context, payload, assetManager, contentManager);
+      if (presentIntent == null) {
+        throw new NullPointerException("presentIntent was null, this should never happen!");
+      }
+
+      CardConfiguration configuration = new CardConfiguration(cardJSON, assetManager, contentManager);
+      presentIntent.putExtra(CardActivity.EXTRA_CONFIGURATION, configuration);
+
+      // With these, the card activity can clear the cache without parsing the payload again.
+      ArrayList<String> cacheURLs = new ArrayList<>();
+      for (URL url : assetManager.getCacheURLs(payload.getCard())) {
+        cacheURLs.add(url.toString());
+      }
+      presentIntent.putStringArrayListExtra(CardActivity.EXTRA_CACHE_URLS, cacheURLs);
+
+      // Posters are small and quick to extract, and let the card and the notification
+      // show something right away, so extract them even when not decoding.
+      assetManager.extractPosters(configuration.getAssets());
+
+      // The notification goes out without its picture if this failed, so make sure it doesn't do so
+      // silently.
+      AssetManager.PosterAsset heroPosterAsset = getHeroPosterAsset(configuration);
+      if (heroPosterAsset != null && heroPosterAsset.getPoster() == null) {
+        Log.w(LOG_TAG, "No poster could be extracted for the hero of type " + heroPosterAsset.getType());
+      }
+
+      final Runnable onPrepared = new Runnable() {
+        @Override
+        public void run() {
+          callback.onPrepared(presentIntent);
+        }
+      };
+
+      if (!decodeAssets) {
+        dispatch(handler, onPrepared);
+        return;
+      }
+
+      assetManager.decodeAssets(configuration.getAssets(), new AssetManager.DecodeCompletionCallback() {
+        @Override
+        public void onDecodeCompleted() {
+          dispatch(handler, onPrepared);
+        }
+      });
+    } catch (final Exception ex) {
+      dispatch(handler, new Runnable() {
+        @Override
+        public void run() {
+          callback.onError(ex);
+        }
+      });
+    }
   }
 
   /**
@@ -362,82 +576,176 @@ public final class NotificationsManager {
     @NonNull final Bundle notificationBundle,
     @NonNull final Intent launcherIntent,
     @Nullable final NotificationExtender notificationExtender) {
-    final JSONObject alert;
-    final int payloadHash;
+    final boolean[] success = new boolean[1];
+    final CountDownLatch presented = new CountDownLatch(1);
+    boolean started = presentNotificationAsync(
+      context,
+      notificationBundle,
+      launcherIntent,
+      notificationExtender,
+      new PresentCallback() {
+        @Override
+        public void onPresented() {
+          success[0] = true;
+          presented.countDown();
+        }
 
-    try {
-      String payload = notificationBundle.getString(CARD_PAYLOAD_KEY);
-      if (payload == null) {
-        return false;
+        @Override
+        public void onError(@NonNull Exception exception) {
+          presented.countDown();
+        }
       }
-      payloadHash = payload.hashCode();
+    );
+    if (!started) {
+      return false;
+    }
 
-      JSONObject payloadObject = new JSONObject(payload);
-      alert = payloadObject.optJSONObject("alert") != null
-        ? payloadObject.optJSONObject("alert")
-        : new JSONObject();
+    try {
+      presented.await();
+    } catch (InterruptedException ex) {
+      Log.e(LOG_TAG, "Failed to wait for notification to be presented", ex);
+      return false;
+    }
+    return success[0];
+  }
+
+  /**
+   * Present a {@link Notification} from a GCM push bundle, without waiting for it to be presented.
+   * <p/>
+   * Like {@code presentNotification()}, this caches the assets from the notification bundle before
+   * presenting a notification, but it returns as soon as the bundle has been checked, rather than
+   * blocking until the assets have been downloaded.
+   * <p/>
+   * Note that nothing keeps the process alive while the assets download. If you call this from a
+   * service which may be stopped before then, use {@code schedulePresentNotification()} instead.
+   *
+   * @param context              The context to send the notification from
+   * @param notificationBundle   The content of the push notification
+   * @param launcherIntent       The launcher intent that contains your Application's activity.
+   *                             See {@code presentNotification()}.
+   * @param notificationExtender A nullable argument that allows you to customize the notification
+   *                             before displaying it.
+   * @param callback             A nullable callback to invoke once the notification has been
+   *                             presented, or could not be. This is invoked on a background thread.
+   * @return Whether or not the notification bundle could be read and presentation was started.
+   */
+  public static boolean presentNotificationAsync(
+    @NonNull final Context context,
+    @NonNull final Bundle notificationBundle,
+    @NonNull final Intent launcherIntent,
+    @Nullable final NotificationExtender notificationExtender,
+    @Nullable final PresentCallback callback) {
+    final NotificationPayload payload;
+    try {
+      payload = getPayload(notificationBundle);
     } catch (JSONException ex) {
       Log.e(LOG_TAG, "Error while parsing notification bundle JSON", ex);
       return false;
     }
+    if (payload == null) {
+      return false;
+    }
 
-    final boolean[] success = new boolean[1];
+    final JSONObject alert = payload.getAlert();
+    final int payloadHash = payload.getPayloadHash();
 
-    final Thread backgroundThread = new Thread(new Runnable() {
+    // Hand the payload on, so that it isn't parsed again while preparing the card.
+    prepareCard(context, notificationBundle, payload, new PrepareCallback() {
       @Override
-      public void run() {
-        Looper.prepare();
-        prepareCard(context, notificationBundle, new PrepareCallback() {
-          @Override
-          public void onPrepared(@NonNull Intent presentationIntent) {
-            Intent contentIntent = new Intent(launcherIntent);
-            contentIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-            contentIntent.putExtra(EXTRA_PAYLOAD_INTENT, presentationIntent);
-
-            NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-            Notification.Builder builder = new Notification.Builder(context)
-              .setSmallIcon(android.R.drawable.ic_dialog_alert)
-              .setContentTitle(alert.optString("title"))
-              .setContentText(alert.optString("body"))
-              .setAutoCancel(true)
-              .setContentIntent(
-                PendingIntent.getActivity(
-                  context.getApplicationContext(),
-                  payloadHash,
-                  contentIntent,
-                  PendingIntent.FLAG_ONE_SHOT
-                )
-              );
-
-            if (notificationExtender != null) {
-              builder = notificationExtender.extendNotification(builder);
-            }
-
-            manager.notify(NOTIFICATION_TAG, payloadHash, builder.getNotification());
-            success[0] = true;
-            Looper.myLooper().quit();
+      public void onPrepared(@NonNull Intent presentationIntent) {
+        Intent contentIntent = new Intent(launcherIntent);
+        contentIntent.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        contentIntent.putExtra(EXTRA_PAYLOAD_INTENT, presentationIntent);
+
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        Notification.Builder builder = new Notification.Builder(context)
+          .setSmallIcon(android.R.drawable.ic_dialog_alert)
+          .setContentTitle(alert.optString("title"))
+          .setContentText(alert.optString("body"))
+          .setAutoCancel(true)
+          .setContentIntent(
+            PendingIntent.getActivity(
+              context.getApplicationContext(),
+              payloadHash,
+              contentIntent,
+              PendingIntent.FLAG_ONE_SHOT
+            )
+          );
+
+        Bitmap poster = getHeroPoster(presentationIntent);
+        if (poster != null) {
+          builder.setLargeIcon(poster);
+          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            builder.setStyle(
+              new Notification.BigPictureStyle()
+                .bigPicture(poster)
+                .bigLargeIcon((Bitmap) null)
+                .setSummaryText(alert.optString("body"))
+            );
           }
+        }
 
-          @Override
-          public void onError(@NonNull Exception exception) {
-            Log.e(LOG_TAG, "Error while preparing card", exception);
-            Looper.myLooper().quit();
-          }
-        });
+        if (notificationExtender != null) {
+          builder = notificationExtender.extendNotification(builder);
+        }
+
+        manager.notify(NOTIFICATION_TAG, payloadHash, builder.getNotification());
+        if (callback != null) {
+          callback.onPresented();
+        }
+      }
 
-        Looper.loop();
+      @Override
+      public void onError(@NonNull Exception exception) {
+        Log.e(LOG_TAG, "Error while preparing card", exception);
+        if (callback != null) {
+          callback.onError(exception);
+        }
       }
-    });
+    }, false, null);
 
-    backgroundThread.start();
+    return true;
+  }
 
-    try {
-      backgroundThread.join();
-    } catch (InterruptedException ex) {
-      Log.e(LOG_TAG, "Failed to wait for background thread", ex);
+  /**
+   * Schedule a {@link Notification} to be presented from a GCM push bundle, as a job which keeps
+   * your process alive until the assets of the notification have been downloaded, even after the
+   * service which received the push has stopped. The job waits for a network connection.
+   * <p/>
+   * Jobs may run after your process has been restarted, so only the string values of the
+   * notification bundle and the launcher intent are kept, and the notification can not be
+   * customized with an extender.
+   * <p/>
+   * Jobs require API 21, on older versions this falls back to {@code presentNotificationAsync()}.
+   * <p/>
+   * Job ids are shared by every job your app schedules, so reserve a range of ids for notifications
+   * which none of your other jobs use. Scheduling a job with the id of one which has not run yet
+   * replaces it, so give each notification its own id from the range, for example by rotating
+   * through it. Otherwise a notification received while another is still waiting for the network
+   * replaces it.
+   *
+   * @param context            The context to send the notification from
+   * @param jobId              The id of the job to schedule, from the ids your app reserves for
+   *                           notifications
+   * @param notificationBundle The content of the push notification
+   * @param launcherIntent     The launcher intent that contains your Application's activity.
+   *                           See {@code presentNotification()}.
+   * @return Whether or not the notification could be scheduled.
+   */
+  public static boolean schedulePresentNotification(
+    @NonNull Context context,
+    int jobId,
+    @NonNull Bundle notificationBundle,
+    @NonNull Intent launcherIntent) {
+    String payload = notificationBundle.getString(CARD_PAYLOAD_KEY);
+    if (payload == null) {
       return false;
     }
-    return success[0];
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return presentNotificationAsync(context, notificationBundle, launcherIntent, null, null);
+    }
+    return PresentNotificationJobService.schedule(context, jobId, notificationBundle, launcherIntent);
   }
 
   /**
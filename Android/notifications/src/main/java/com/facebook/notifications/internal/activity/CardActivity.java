@@ -20,6 +20,7 @@ package com.facebook.notifications.internal.activity;
 
 import android.app.Activity;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -29,6 +30,7 @@ import android.util.Log;
 import android.view.Gravity;
 import android.widget.FrameLayout;
 import android.widget.FrameLayout.LayoutParams;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 
 import com.facebook.notifications.NotificationCardResult;
@@ -37,13 +39,22 @@ import com.facebook.notifications.internal.asset.AssetManager;
 import com.facebook.notifications.internal.asset.handlers.ColorAssetHandler;
 import com.facebook.notifications.internal.configuration.CardConfiguration;
 import com.facebook.notifications.internal.content.ContentManager;
+import com.facebook.notifications.internal.utilities.JSONPayload;
 import com.facebook.notifications.internal.view.ActionButton;
 import com.facebook.notifications.internal.view.ActionsView;
+import com.facebook.notifications.internal.view.AnimationScheduler;
 import com.facebook.notifications.internal.view.CardView;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * An activity which displays a push card.
  */
@@ -58,6 +69,11 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
    * JSON object.
    */
   public static final String EXTRA_CONFIGURATION = "fb_push_card_configuration";
+  /**
+   * The intent extra key to be set with the URLs cached for the card, as strings. If set, the cache
+   * is cleared for these URLs once the card is dismissed, without parsing the card payload again.
+   */
+  public static final String EXTRA_CACHE_URLS = "fb_push_card_cache_urls";
   /**
    * The intent extra key to be set with the push campaign identifier.
    */
@@ -77,7 +93,9 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
   private static final String LOG_TAG = CardActivity.class.getCanonicalName();
 
   private @Nullable String campaignIdentifier;
-  private @Nullable JSONObject configurationPayload;
+  private @Nullable String configurationPayloadString;
+  private @Nullable JSONPayload configurationPayload;
+  private @Nullable ArrayList<String> cacheURLs;
 
   private @NonNull AssetManager assetManager;
   private @NonNull ContentManager contentManager;
@@ -93,8 +111,9 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
     Intent intent = getIntent();
     campaignIdentifier = intent.getStringExtra(EXTRA_CAMPAIGN_IDENTIFIER);
 
-    String payloadString = intent.getStringExtra(EXTRA_CARD_PAYLOAD);
+    configurationPayloadString = intent.getStringExtra(EXTRA_CARD_PAYLOAD);
     CardConfiguration configuration = intent.getParcelableExtra(EXTRA_CONFIGURATION);
+    cacheURLs = intent.getStringArrayListExtra(EXTRA_CACHE_URLS);
 
     AssetManager assetManager = intent.getParcelableExtra(EXTRA_ASSET_MANAGER);
     ContentManager contentManager = intent.getParcelableExtra(EXTRA_CONTENT_MANAGER);
@@ -108,12 +127,6 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
     this.assetManager = assetManager;
     this.contentManager = contentManager;
 
-    try {
-      configurationPayload = new JSONObject(payloadString);
-    } catch (JSONException ex) {
-      Log.e(LOG_TAG, "Error parsing JSON payload", ex);
-    }
-
     if (configuration == null) {
       beginLoadingContent();
     } else {
@@ -123,6 +136,38 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
     appEventsLogger.logPushOpen(campaignIdentifier);
   }
 
+  /**
+   * Parse the card payload the first time it is needed. A card that was prepared ahead of time is
+   * displayed from its configuration, so only needs its payload once it is being destroyed.
+   */
+  @Nullable
+  private JSONPayload getConfigurationPayload() {
+    if (configurationPayload == null && configurationPayloadString != null) {
+      try {
+        configurationPayload = JSONPayload.parse(configurationPayloadString);
+      } catch (JSONException ex) {
+        Log.e(LOG_TAG, "Error parsing JSON payload", ex);
+      }
+      configurationPayloadString = null;
+    }
+    return configurationPayload;
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+
+    AnimationScheduler.getInstance().setPaused(false);
+  }
+
+  @Override
+  protected void onPause() {
+    // Don't spend CPU on animations nobody is looking at.
+    AnimationScheduler.getInstance().setPaused(true);
+
+    super.onPause();
+  }
+
   @Override
   protected void onDestroy() {
     super.onDestroy();
@@ -130,18 +175,38 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
       return;
     }
     assetManager.stopCaching();
+    if (cacheURLs != null) {
+      assetManager.clearCache(getURLs(cacheURLs));
+      return;
+    }
+
+    JSONPayload configurationPayload = getConfigurationPayload();
     if (configurationPayload == null) {
       return;
     }
     assetManager.clearCache(configurationPayload);
   }
 
+  @NonNull
+  private static Set<URL> getURLs(@NonNull List<String> urlStrings) {
+    Set<URL> urls = new HashSet<>();
+    for (String urlString : urlStrings) {
+      try {
+        urls.add(new URL(urlString));
+      } catch (MalformedURLException ex) {
+        Log.w(LOG_TAG, "Invalid cached URL: " + urlString, ex);
+      }
+    }
+    return urls;
+  }
+
   private void beginLoadingContent() {
     if (assetManager == null || contentManager == null) {
       Log.e(LOG_TAG, "Asset & content manager should be available!");
       return;
     }
 
+    final JSONPayload configurationPayload = getConfigurationPayload();
     if (configurationPayload == null) {
       Log.e(LOG_TAG, "No card payload is available!");
       return;
@@ -150,11 +215,19 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
     ProgressBar loadingView = new ProgressBar(this);
     loadingView.setIndeterminate(true);
 
-    int backgroundColor = ColorAssetHandler.fromRGBAHex(configurationPayload.optString("backdropColor"));
+    int backgroundColor = ColorAssetHandler.fromRGBAHex(configurationPayload.getRoot().optString("backdropColor"));
 
     FrameLayout loadingViewFrame = new FrameLayout(this);
     loadingViewFrame.setBackgroundColor(backgroundColor);
 
+    // While the hero is downloading, show whatever we can decode of it behind the progress bar.
+    final ImageView previewView = new ImageView(this);
+    previewView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+    loadingViewFrame.addView(previewView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+    JSONObject heroJSON = configurationPayload.getRoot().optJSONObject("hero");
+    final JSONObject heroBackgroundJSON = heroJSON != null ? heroJSON.optJSONObject("background") : null;
+
     LayoutParams layoutParams = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
     layoutParams.gravity = Gravity.CENTER;
     loadingViewFrame.addView(loadingView, layoutParams);
@@ -171,7 +244,7 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
       public void onCacheCompleted(@NonNull JSONObject payload) {
         final CardConfiguration configuration;
         try {
-          configuration = new CardConfiguration(configurationPayload, assetManager, contentManager);
+          configuration = new CardConfiguration(payload, assetManager, contentManager);
         } catch (JSONException ex) {
           Log.e(LOG_TAG, "Error while parsing JSON", ex);
           return;
@@ -184,6 +257,20 @@ public class CardActivity extends Activity implements ActionsView.Delegate {
           }
         });
       }
+    }, new AssetManager.CachePreviewCallback() {
+      @Override
+      public void onPreviewAvailable(@NonNull JSONObject payload, @NonNull final Bitmap preview) {
+        if (payload != heroBackgroundJSON) {
+          return;
+        }
+
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            previewView.setImageBitmap(preview);
+          }
+        });
+      }
     });
   }
 
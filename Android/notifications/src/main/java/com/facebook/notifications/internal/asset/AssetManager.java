@@ -19,6 +19,7 @@
 package com.facebook.notifications.internal.asset;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -30,15 +31,27 @@ import android.view.View;
 import com.facebook.notifications.internal.asset.cache.ContentCache;
 import com.facebook.notifications.internal.utilities.InvalidParcelException;
 import com.facebook.notifications.internal.utilities.JSONObjectVisitor;
+import com.facebook.notifications.internal.utilities.JSONPayload;
 
 import org.json.JSONObject;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Creates different Asset types based on the contents of a JSON payload
@@ -56,6 +69,16 @@ public class AssetManager implements Parcelable {
      * previously cached, or if caching failed
      */
     File getCachedFile(URL url);
+
+    /**
+     * Gets the URLs to cache for an asset payload, as returned by the `getCacheURLs()` of its
+     * handler. These are only read from the payload once, so use this rather than reading them again.
+     *
+     * @param payload The payload of the asset
+     * @return The URLs of the asset, or null if it has none
+     */
+    @Nullable
+    Set<URL> getCacheURLs(@NonNull JSONObject payload);
   }
 
   /**
@@ -110,6 +133,80 @@ public class AssetManager implements Parcelable {
     void onCacheCompleted(@NonNull JSONObject payload);
   }
 
+  /**
+   * An optional interface for an {@link AssetHandler} that can show a preview of its content while
+   * that content is still being downloaded.
+   */
+  public interface PreviewableAssetHandler {
+    /**
+     * Invoked by {@link AssetManager} on the download thread as content for one of the URLs returned
+     * by `getCacheURLs()` arrives. Keep this cheap, as it delays the rest of the download.
+     *
+     * @param payload     The payload of the asset being downloaded
+     * @param partialFile The file that the content is being downloaded into
+     * @return A low resolution preview of the asset, or null if not enough content is available yet
+     */
+    @Nullable
+    Bitmap createPreview(@NonNull JSONObject payload, @NonNull File partialFile);
+  }
+
+  /**
+   * An interface for receiving previews of assets while a payload is being cached.
+   */
+  public interface CachePreviewCallback {
+    /**
+     * Invoked by the {@link AssetManager} on the download thread whenever a new preview is available.
+     *
+     * @param payload The payload of the asset the preview is for, as found in the cached payload
+     * @param preview The preview
+     */
+    void onPreviewAvailable(@NonNull JSONObject payload, @NonNull Bitmap preview);
+  }
+
+  /**
+   * An optional interface for an {@link Asset} that can decode its content ahead of time, so that
+   * inflating its view does not have to.
+   */
+  public interface DecodableAsset extends Asset {
+    /**
+     * Decode the content of this asset into the in-process memory cache. Invoked on a background
+     * thread, after all of the URLs of the asset have been cached.
+     */
+    void decode();
+  }
+
+  /**
+   * An optional interface for an {@link Asset} whose content has a small still image, such as the
+   * first frame of an animation, which can be shown before or instead of the content itself.
+   */
+  public interface PosterAsset extends Asset {
+    /**
+     * Extract the poster of this asset into the in-process memory cache. Invoked on a background
+     * thread, after all of the URLs of the asset have been cached.
+     */
+    void extractPoster();
+
+    /**
+     * Get the poster of this asset, if it has been extracted. Never decodes, so this is safe to call
+     * from the main thread.
+     *
+     * @return The poster, or null if it has not been extracted or could not be.
+     */
+    @Nullable
+    Bitmap getPoster();
+  }
+
+  /**
+   * An interface for receiving a callback when the decoding of a set of assets has completed.
+   */
+  public interface DecodeCompletionCallback {
+    /**
+     * Invoked by the {@link AssetManager} whenever decoding has finished. This is invoked on one of
+     * the decoding threads.
+     */
+    void onDecodeCompleted();
+  }
+
   public static final Creator<AssetManager> CREATOR = new Creator<AssetManager>() {
     @Override
     public AssetManager createFromParcel(Parcel source) {
@@ -130,9 +227,41 @@ public class AssetManager implements Parcelable {
     }
   };
   private static final String LOG_TAG = AssetManager.class.getCanonicalName();
+  private static final int DECODE_THREAD_COUNT = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+  private static final int DECODE_QUEUE_CAPACITY = 16;
+  private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+    DECODE_THREAD_COUNT, DECODE_THREAD_COUNT,
+    30, TimeUnit.SECONDS,
+    new ArrayBlockingQueue<Runnable>(DECODE_QUEUE_CAPACITY)
+  );
+
+  static {
+    // Don't keep decoding threads around while there's nothing to prepare.
+    DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
 
   private @Nullable ContentCache contentCache;
   private final @NonNull Map<String, ParcelableAssetHandler> registeredHandlers;
+  // The URLs of each asset payload, so that they are read once when caching and reused when
+  // inflating. Payloads compare by identity, and are only weakly held.
+  private final @NonNull Map<JSONObject, Set<URL>> assetCacheURLs =
+    Collections.synchronizedMap(new WeakHashMap<JSONObject, Set<URL>>());
+  private final @NonNull AssetCache assetCache = new AssetCache() {
+    @Override
+    public File getCachedFile(URL url) {
+      return contentCache != null ? contentCache.getCachedFile(url) : null;
+    }
+
+    @Nullable
+    @Override
+    public Set<URL> getCacheURLs(@NonNull JSONObject payload) {
+      AssetHandler<? extends Asset> handler = registeredHandlers.get(payload.optString("_type"));
+      if (handler == null) {
+        return null;
+      }
+      return getAssetCacheURLs(payload, handler);
+    }
+  };
 
   public AssetManager() {
     registeredHandlers = new ConcurrentHashMap<>();
@@ -189,7 +318,7 @@ public class AssetManager implements Parcelable {
       return null;
     }
 
-    return handler.createAsset(payload, contentCache);
+    return handler.createAsset(payload, assetCache);
   }
 
   @NonNull
@@ -212,16 +341,162 @@ public class AssetManager implements Parcelable {
    * @param callback The callback to be invoked when caching completes.
    */
   public void cachePayload(final @NonNull JSONObject payload, final @NonNull CacheCompletionCallback callback) {
+    cachePayload(payload, callback, null);
+  }
+
+  /**
+   * Caches a given JSON payload in the background, previewing assets whose handlers support it.
+   *
+   * @param payload         The payload to cache
+   * @param callback        The callback to be invoked when caching completes.
+   * @param previewCallback The callback to be invoked with previews of assets as they download.
+   */
+  public void cachePayload(
+    final @NonNull JSONObject payload,
+    final @NonNull CacheCompletionCallback callback,
+    final @Nullable CachePreviewCallback previewCallback
+  ) {
+    cachePayload(payload, getTypedObjects(payload), callback, previewCallback);
+  }
+
+  /**
+   * Caches a parsed JSON payload in the background. This does not need to walk the payload to find
+   * its assets.
+   *
+   * @param payload  The payload to cache
+   * @param callback The callback to be invoked when caching completes.
+   */
+  public void cachePayload(final @NonNull JSONPayload payload, final @NonNull CacheCompletionCallback callback) {
+    cachePayload(payload, callback, null);
+  }
+
+  /**
+   * Caches a parsed JSON payload in the background, previewing assets whose handlers support it.
+   * This does not need to walk the payload to find its assets.
+   *
+   * @param payload         The payload to cache
+   * @param callback        The callback to be invoked when caching completes.
+   * @param previewCallback The callback to be invoked with previews of assets as they download.
+   */
+  public void cachePayload(
+    final @NonNull JSONPayload payload,
+    final @NonNull CacheCompletionCallback callback,
+    final @Nullable CachePreviewCallback previewCallback
+  ) {
+    cachePayload(payload.getRoot(), payload.getTypedObjects(), callback, previewCallback);
+  }
+
+  private void cachePayload(
+    final @NonNull JSONObject payload,
+    @NonNull List<JSONObject> typedObjects,
+    final @NonNull CacheCompletionCallback callback,
+    final @Nullable CachePreviewCallback previewCallback
+  ) {
     if (contentCache == null) {
       throw new UnsupportedOperationException("Cannot call cachePayload() before setContext() has been called!");
     }
 
-    contentCache.cache(getCacheURLs(payload), new ContentCache.CompletionCallback() {
+    final Map<URL, JSONObject> assetPayloads = new HashMap<>();
+    Set<URL> cacheURLs = getCacheURLs(typedObjects, previewCallback != null ? assetPayloads : null);
+
+    ContentCache.ProgressCallback progressCallback = null;
+    if (previewCallback != null) {
+      progressCallback = new ContentCache.ProgressCallback() {
+        @Override
+        public void onCacheProgress(@NonNull URL url, @NonNull File partialFile) {
+          JSONObject assetPayload = assetPayloads.get(url);
+          if (assetPayload == null) {
+            return;
+          }
+
+          ParcelableAssetHandler handler = registeredHandlers.get(assetPayload.optString("_type"));
+          if (handler == null) {
+            return;
+          }
+
+          Bitmap preview = handler.createPreview(assetPayload, partialFile);
+          if (preview != null) {
+            previewCallback.onPreviewAvailable(assetPayload, preview);
+          }
+        }
+      };
+    }
+
+    contentCache.cache(cacheURLs, new ContentCache.CompletionCallback() {
       @Override
       public void onCacheCompleted(@NonNull Set<URL> urlsToCache) {
         callback.onCacheCompleted(payload);
       }
-    });
+    }, progressCallback);
+  }
+
+  /**
+   * Extracts the posters of a set of assets on the calling thread, which must not be the main
+   * thread. Assets which are not {@link PosterAsset}s are skipped.
+   *
+   * @param assets The assets to extract posters from, whose URLs must have already been cached
+   */
+  public void extractPosters(@NonNull Collection<? extends Asset> assets) {
+    for (Asset asset : assets) {
+      if (!(asset instanceof PosterAsset)) {
+        continue;
+      }
+
+      try {
+        ((PosterAsset) asset).extractPoster();
+      } catch (Exception ex) {
+        // Posters are optional, the asset can still be shown without one.
+        Log.w(LOG_TAG, "Failed to extract poster of asset of type " + asset.getType(), ex);
+      }
+    }
+  }
+
+  /**
+   * Decodes the content of a set of assets in the background, so that their views can be inflated
+   * without decoding on the main thread. Assets which are not {@link DecodableAsset}s are skipped.
+   *
+   * @param assets   The assets to decode, whose URLs must have already been cached
+   * @param callback The callback to be invoked when decoding completes.
+   */
+  public void decodeAssets(@NonNull Collection<? extends Asset> assets, final @NonNull DecodeCompletionCallback callback) {
+    List<DecodableAsset> decodableAssets = new ArrayList<>();
+    for (Asset asset : assets) {
+      if (asset instanceof DecodableAsset) {
+        decodableAssets.add((DecodableAsset) asset);
+      }
+    }
+
+    if (decodableAssets.size() == 0) {
+      callback.onDecodeCompleted();
+      return;
+    }
+
+    final AtomicInteger remaining = new AtomicInteger(decodableAssets.size());
+    for (final DecodableAsset asset : decodableAssets) {
+      try {
+        DECODE_EXECUTOR.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              asset.decode();
+            } catch (Exception ex) {
+              // Decoding ahead of time is only an optimization, the view will try again when inflated.
+              Log.w(LOG_TAG, "Failed to decode asset of type " + asset.getType(), ex);
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+              callback.onDecodeCompleted();
+            }
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        // Too many assets are already waiting to be decoded. This one is left for its view to decode.
+        Log.w(LOG_TAG, "Decode queue is full, skipping asset of type " + asset.getType());
+        if (remaining.decrementAndGet() == 0) {
+          callback.onDecodeCompleted();
+        }
+      }
+    }
   }
 
   /**
@@ -234,49 +509,126 @@ public class AssetManager implements Parcelable {
       throw new UnsupportedOperationException("Cannot call cachePayload() before setContext() has been called!");
     }
 
-    contentCache.clear(getCacheURLs(payload));
+    contentCache.clear(getCacheURLs(getTypedObjects(payload), null));
   }
 
   /**
-   * Stops any caching that may be occurring in the background.
+   * Clears the cache for a parsed JSON payload.
+   *
+   * @param payload The payload to clear the cache for.
    */
-  public void stopCaching() {
+  public void clearCache(@NonNull JSONPayload payload) {
     if (contentCache == null) {
-      throw new UnsupportedOperationException("Cannot call stopCaching() before setContext() has been called!");
+      throw new UnsupportedOperationException("Cannot call cachePayload() before setContext() has been called!");
     }
-    contentCache.stop();
+
+    contentCache.clear(getCacheURLs(payload.getTypedObjects(), null));
+  }
+
+  /**
+   * Clears the cache for a set of URLs, such as those returned by {@code getCacheURLs()}.
+   *
+   * @param urls The URLs to clear from the cache.
+   */
+  public void clearCache(@NonNull Set<URL> urls) {
+    if (contentCache == null) {
+      throw new UnsupportedOperationException("Cannot call clearCache() before setContext() has been called!");
+    }
+
+    contentCache.clear(urls);
   }
 
+  /**
+   * Gets the URLs that are cached for a parsed JSON payload.
+   *
+   * @param payload The payload to get the URLs of.
+   * @return The URLs of every asset of the payload.
+   */
   @NonNull
-  private Set<URL> getCacheURLs(@Nullable JSONObject payload) {
+  public Set<URL> getCacheURLs(@NonNull JSONPayload payload) {
+    return getCacheURLs(payload.getTypedObjects(), null);
+  }
+
+  /**
+   * Stops any caching that may be occurring in the background.
+   */
+  public void stopCaching() {
     if (contentCache == null) {
       throw new UnsupportedOperationException("Cannot call stopCaching() before setContext() has been called!");
     }
+    contentCache.stop();
+  }
 
+  /**
+   * Walk a payload for all of its typed objects, children before their parents. Payloads parsed
+   * with {@link JSONPayload} have already collected these.
+   */
+  @NonNull
+  private static List<JSONObject> getTypedObjects(@Nullable JSONObject payload) {
+    final List<JSONObject> typedObjects = new ArrayList<>();
     if (payload == null) {
-      return new HashSet<>();
+      return typedObjects;
     }
 
-    final Set<URL> cacheURLs = new HashSet<>();
     JSONObjectVisitor.walk(payload, new JSONObjectVisitor() {
       @Override
       protected void visit(JSONObject object) {
         super.visit(object);
 
-        String type = object.optString("_type");
-        AssetHandler<? extends Asset> handler = registeredHandlers.get(type);
-        if (handler == null) {
-          return;
+        if (object.has("_type")) {
+          typedObjects.add(object);
         }
+      }
+    });
+    return typedObjects;
+  }
 
-        Set<URL> newURLs = handler.getCacheURLs(object);
-        if (newURLs == null) {
-          return;
-        }
+  /**
+   * Get the URLs to cache for a single asset payload, asking its handler only the first time.
+   */
+  @Nullable
+  private Set<URL> getAssetCacheURLs(@NonNull JSONObject assetPayload, @NonNull AssetHandler<? extends Asset> handler) {
+    Set<URL> urls = assetCacheURLs.get(assetPayload);
+    if (urls == null) {
+      urls = handler.getCacheURLs(assetPayload);
+      // Remember assets without URLs too, so that they aren't asked again either.
+      urls = urls != null ? Collections.unmodifiableSet(new HashSet<>(urls)) : Collections.<URL>emptySet();
+      assetCacheURLs.put(assetPayload, urls);
+    }
+    return urls.isEmpty() ? null : urls;
+  }
 
-        cacheURLs.addAll(newURLs);
+  /**
+   * Get all of the URLs to cache for a payload.
+   *
+   * @param typedObjects  The typed objects of the payload
+   * @param assetPayloads If not null, filled with the asset payload that each URL belongs to
+   */
+  @NonNull
+  private Set<URL> getCacheURLs(@NonNull List<JSONObject> typedObjects, @Nullable Map<URL, JSONObject> assetPayloads) {
+    if (contentCache == null) {
+      throw new UnsupportedOperationException("Cannot call stopCaching() before setContext() has been called!");
+    }
+
+    Set<URL> cacheURLs = new HashSet<>();
+    for (JSONObject object : typedObjects) {
+      AssetHandler<? extends Asset> handler = registeredHandlers.get(object.optString("_type"));
+      if (handler == null) {
+        continue;
       }
-    });
+
+      Set<URL> newURLs = getAssetCacheURLs(object, handler);
+      if (newURLs == null) {
+        continue;
+      }
+
+      cacheURLs.addAll(newURLs);
+      if (assetPayloads != null) {
+        for (URL url : newURLs) {
+          assetPayloads.put(url, object);
+        }
+      }
+    }
 
     return cacheURLs;
   }
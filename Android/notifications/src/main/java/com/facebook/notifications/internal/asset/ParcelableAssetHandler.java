@@ -19,6 +19,7 @@
 package com.facebook.notifications.internal.asset;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
@@ -29,13 +30,14 @@ import com.facebook.notifications.internal.utilities.InvalidParcelException;
 
 import org.json.JSONObject;
 
+import java.io.File;
 import java.net.URL;
 import java.util.Set;
 
 /**
  * Represents a parcelable entry in {@link AssetManager}'s handler list.
  */
-class ParcelableAssetHandler implements AssetManager.AssetHandler<Asset>, Parcelable {
+class ParcelableAssetHandler implements AssetManager.AssetHandler<Asset>, AssetManager.PreviewableAssetHandler, Parcelable {
   public static final Creator<ParcelableAssetHandler> CREATOR = new Creator<ParcelableAssetHandler>() {
     @Override
     public ParcelableAssetHandler createFromParcel(Parcel source) {
@@ -117,6 +119,18 @@ class ParcelableAssetHandler implements AssetManager.AssetHandler<Asset>, Parcel
     return handler.createView(asset, context);
   }
 
+  @Nullable
+  @Override
+  public Bitmap createPreview(@NonNull JSONObject payload, @NonNull File partialFile) {
+    if (handler == null) {
+      throw new IllegalStateException("AssetHandler should not be null, did you forget to call validate()?");
+    }
+    if (!(handler instanceof AssetManager.PreviewableAssetHandler)) {
+      return null;
+    }
+    return ((AssetManager.PreviewableAssetHandler) handler).createPreview(payload, partialFile);
+  }
+
   @Override
   public int describeContents() {
     return 0;
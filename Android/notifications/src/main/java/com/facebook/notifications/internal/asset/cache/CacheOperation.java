@@ -31,12 +31,18 @@ class CacheOperation implements ContentDownloader.DownloadCallback {
   private final @NonNull Set<URL> urlsToCache;
   private final @NonNull Set<URL> remainingURLs;
   private final @NonNull ContentCache.CompletionCallback completion;
+  private final @Nullable ContentCache.ProgressCallback progress;
 
-  public CacheOperation(@NonNull Set<URL> urlsToCache, @NonNull ContentCache.CompletionCallback completion) {
+  public CacheOperation(
+    @NonNull Set<URL> urlsToCache,
+    @NonNull ContentCache.CompletionCallback completion,
+    @Nullable ContentCache.ProgressCallback progress
+  ) {
     this.mutex = new Object();
     this.urlsToCache = urlsToCache;
     this.remainingURLs = new HashSet<>(urlsToCache);
     this.completion = completion;
+    this.progress = progress;
   }
 
   @NonNull
@@ -49,6 +55,13 @@ class CacheOperation implements ContentDownloader.DownloadCallback {
     return completion;
   }
 
+  @Override
+  public void onResourceProgress(@NonNull URL url, @NonNull File partialFile, long bytesWritten) {
+    if (progress != null) {
+      progress.onCacheProgress(url, partialFile);
+    }
+  }
+
   @Override
   public void onResourceDownloaded(@NonNull URL url, @Nullable File targetFile) {
     boolean invoke;
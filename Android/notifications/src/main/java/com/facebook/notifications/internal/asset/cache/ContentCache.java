@@ -23,7 +23,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.facebook.notifications.internal.asset.Asset;
-import com.facebook.notifications.internal.asset.AssetManager;
 
 import java.io.File;
 import java.net.URL;
@@ -40,17 +39,24 @@ import java.util.Set;
  * Manages the caching of an {@link Asset}'s resources
  * from the internet
  */
-public class ContentCache implements AssetManager.AssetCache {
+public class ContentCache {
   public interface CompletionCallback {
     void onCacheCompleted(@NonNull Set<URL> urlsToCache);
   }
 
+  public interface ProgressCallback {
+    /**
+     * Invoked on the download thread whenever a significant amount of new content has been written
+     * for a URL that is still downloading.
+     */
+    void onCacheProgress(@NonNull URL url, @NonNull File partialFile);
+  }
+
   private static final String LOG_TAG = ContentCache.class.getCanonicalName();
 
   private final @NonNull Context context;
 
   private final @NonNull ContentDownloader downloader;
-  private final @NonNull Thread downloadThread;
 
   private final @NonNull DiskCache diskCache;
 
@@ -64,12 +70,8 @@ public class ContentCache implements AssetManager.AssetCache {
     downloader = new ContentDownloader();
     diskCache = new DiskCache(context);
 
-    downloadThread = new Thread(downloader);
-
     synchronizationMutex = new Object();
     cacheOperations = new HashMap<>();
-
-    downloadThread.start();
   }
 
   @NonNull
@@ -96,15 +98,7 @@ public class ContentCache implements AssetManager.AssetCache {
   }
 
   public void stop() {
-    downloadThread.interrupt();
-
-    try {
-      downloadThread.join();
-    } catch (InterruptedException ex) {
-      // If we were interrupted while waiting to have our children die, re-interrupt the
-      // child thread and hope for the best.
-      downloadThread.interrupt();
-    }
+    downloader.stop();
   }
 
   @NonNull
@@ -113,7 +107,15 @@ public class ContentCache implements AssetManager.AssetCache {
   }
 
   public void cache(@NonNull Set<URL> urlsToCache, @NonNull CompletionCallback completion) {
-    CacheOperation operation = new CacheOperation(urlsToCache, completion);
+    cache(urlsToCache, completion, null);
+  }
+
+  public void cache(
+    @NonNull Set<URL> urlsToCache,
+    @NonNull CompletionCallback completion,
+    @Nullable ProgressCallback progress
+  ) {
+    CacheOperation operation = new CacheOperation(urlsToCache, completion, progress);
 
     synchronized (synchronizationMutex) {
       int scheduledCount = 0;
@@ -136,6 +138,18 @@ public class ContentCache implements AssetManager.AssetCache {
 
         cacheOperations.put(hashKey, newOperations);
         downloader.downloadAsync(url, diskCache.fetch(getCacheKey(url)), new ContentDownloader.DownloadCallback() {
+          @Override
+          public void onResourceProgress(@NonNull URL url, @NonNull File partialFile, long bytesWritten) {
+            Set<CacheOperation> operations;
+            synchronized (synchronizationMutex) {
+              operations = new HashSet<>(newOperations);
+            }
+
+            for (CacheOperation operation : operations) {
+              operation.onResourceProgress(url, partialFile, bytesWritten);
+            }
+          }
+
           @Override
           public void onResourceDownloaded(@NonNull URL url, @Nullable File file) {
             Set<CacheOperation> operations;
@@ -162,6 +176,7 @@ public class ContentCache implements AssetManager.AssetCache {
     synchronized (synchronizationMutex) {
       for (URL url : urlsToClear) {
         String cacheKey = getCacheKey(url);
+        MemoryCache.removeAll(diskCache.fetch(cacheKey));
         diskCache.remove(cacheKey);
         if (cachedKeys != null) {
           cachedKeys.remove(cacheKey);
@@ -171,7 +186,6 @@ public class ContentCache implements AssetManager.AssetCache {
   }
 
   @Nullable
-  @Override
   public File getCachedFile(@NonNull URL contentURL) {
     File file = diskCache.fetch(getCacheKey(contentURL));
     if (!file.exists()) {
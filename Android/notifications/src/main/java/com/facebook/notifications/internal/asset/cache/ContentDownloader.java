@@ -29,11 +29,19 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-
-class ContentDownloader implements Runnable {
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads content for a single cache. All caches share a bounded pool of download threads, so a
+ * burst of cards being prepared doesn't start a thread for each of them.
+ */
+class ContentDownloader {
   public interface DownloadCallback {
+    void onResourceProgress(@NonNull URL url, @NonNull File partialFile, long bytesWritten);
+
     void onResourceDownloaded(@NonNull URL url, @Nullable File file);
   }
 
@@ -41,27 +49,34 @@ class ContentDownloader implements Runnable {
   }
 
   private static final String LOG_TAG = ContentDownloader.class.getCanonicalName();
-  private final @NonNull BlockingQueue<DownloadOperation> operations;
-
-  public ContentDownloader() {
-    operations = new LinkedBlockingQueue<>();
+  // Progress is reported each time the download doubles in size past this, so that anything done
+  // with partial content costs at most as much as doing it once with the whole file.
+  private static final long FIRST_PROGRESS_BYTES = 16 * 1024;
+  private static final int DOWNLOAD_THREAD_COUNT = 2;
+  private static final int DOWNLOAD_QUEUE_CAPACITY = 64;
+  private static final ThreadPoolExecutor DOWNLOAD_EXECUTOR = new ThreadPoolExecutor(
+    DOWNLOAD_THREAD_COUNT, DOWNLOAD_THREAD_COUNT,
+    30, TimeUnit.SECONDS,
+    new ArrayBlockingQueue<Runnable>(DOWNLOAD_QUEUE_CAPACITY)
+  );
+
+  static {
+    // Don't keep download threads around while there's nothing to download.
+    DOWNLOAD_EXECUTOR.allowCoreThreadTimeOut(true);
   }
 
-  @Override
-  public void run() {
-    while (true) {
-      try {
-        DownloadOperation operation = operations.take();
-        operation.run();
-      } catch (InterruptedException ex) {
-        // This means our parent thread requested us killed, RIP.
-        return;
-      }
-    }
+  private volatile boolean stopped;
+
+  /**
+   * Stop downloading. Downloads which have not started yet are dropped, without invoking their
+   * callbacks, and a download in progress is finished.
+   */
+  public void stop() {
+    stopped = true;
   }
 
   public void downloadAsync(final @NonNull URL url, final @NonNull File targetFile, final @NonNull DownloadCallback callback) {
-    operations.offer(new DownloadOperation() {
+    DownloadOperation operation = new DownloadOperation() {
       private File download(@NonNull URL url) {
         HttpURLConnection connection = null;
         InputStream inputStream = null;
@@ -76,6 +91,8 @@ class ContentDownloader implements Runnable {
           inputStream = connection.getInputStream();
           outputStream = new FileOutputStream(targetFile);
           byte[] buffer = new byte[4096];
+          long bytesWritten = 0;
+          long nextProgressBytes = FIRST_PROGRESS_BYTES;
 
           while (true) {
             int read = inputStream.read(buffer);
@@ -84,6 +101,13 @@ class ContentDownloader implements Runnable {
             }
 
             outputStream.write(buffer, 0, read);
+            bytesWritten += read;
+
+            if (bytesWritten >= nextProgressBytes) {
+              outputStream.flush();
+              callback.onResourceProgress(url, targetFile, bytesWritten);
+              nextProgressBytes = bytesWritten * 2;
+            }
           }
 
           return targetFile;
@@ -111,8 +135,19 @@ class ContentDownloader implements Runnable {
 
       @Override
       public void run() {
+        if (stopped) {
+          return;
+        }
         callback.onResourceDownloaded(url, download(url));
       }
-    });
+    };
+
+    try {
+      DOWNLOAD_EXECUTOR.execute(operation);
+    } catch (RejectedExecutionException ex) {
+      // Too many downloads are already queued, fail this one rather than queueing without bound.
+      Log.w(LOG_TAG, "Download queue is full, dropping download of url " + url, ex);
+      callback.onResourceDownloaded(url, null);
+    }
   }
 }
@@ -0,0 +1,120 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.asset.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.io.File;
+
+/**
+ * An in-process cache of decoded asset content, keyed by the cache file it was decoded from and the
+ * type of the content, so that a file can have several kinds of content decoded from it.
+ * <p/>
+ * This survives the parceling of assets between {@link com.facebook.notifications.NotificationsManager}
+ * and the card activity, so that content decoded while preparing a card is still available when the
+ * card is displayed.
+ */
+public final class MemoryCache {
+  private static class Entry {
+    private final @NonNull Object value;
+    private final int byteCount;
+
+    private Entry(@NonNull Object value, int byteCount) {
+      this.value = value;
+      this.byteCount = byteCount;
+    }
+  }
+
+  private static final int MAX_BYTE_COUNT = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+  private static final LruCache<String, Entry> CACHE = new LruCache<String, Entry>(MAX_BYTE_COUNT) {
+    @Override
+    protected int sizeOf(String key, Entry value) {
+      return value.byteCount;
+    }
+  };
+
+  private MemoryCache() {
+  }
+
+  @NonNull
+  private static String getKey(@NonNull File file, @NonNull Class<?> type) {
+    return file.getAbsolutePath() + '#' + type.getName();
+  }
+
+  /**
+   * Store decoded content for a file.
+   *
+   * @param file      The cache file the content was decoded from
+   * @param type      The type the content is looked up by
+   * @param value     The decoded content
+   * @param byteCount The approximate amount of memory held by the decoded content
+   */
+  public static <T> void put(@NonNull File file, @NonNull Class<T> type, @NonNull T value, int byteCount) {
+    CACHE.put(getKey(file, type), new Entry(value, Math.max(1, byteCount)));
+  }
+
+  /**
+   * Get the decoded content for a file, leaving it in the cache.
+   *
+   * @param file The cache file the content was decoded from
+   * @param type The expected type of the content
+   * @return The decoded content, or null if none exists
+   */
+  @Nullable
+  public static <T> T get(@NonNull File file, @NonNull Class<T> type) {
+    Entry entry = CACHE.get(getKey(file, type));
+    if (entry == null || !type.isInstance(entry.value)) {
+      return null;
+    }
+    return type.cast(entry.value);
+  }
+
+  /**
+   * Remove and return the decoded content for a file. Use this for content that is consumed by its
+   * user, and can therefore not be shared.
+   *
+   * @param file The cache file the content was decoded from
+   * @param type The expected type of the content
+   * @return The decoded content, or null if none exists
+   */
+  @Nullable
+  public static <T> T remove(@NonNull File file, @NonNull Class<T> type) {
+    Entry entry = CACHE.remove(getKey(file, type));
+    if (entry == null || !type.isInstance(entry.value)) {
+      return null;
+    }
+    return type.cast(entry.value);
+  }
+
+  /**
+   * Remove all decoded content for a file.
+   *
+   * @param file The cache file the content was decoded from
+   */
+  public static void removeAll(@NonNull File file) {
+    String prefix = file.getAbsolutePath() + '#';
+    for (String key : CACHE.snapshot().keySet()) {
+      if (key.startsWith(prefix)) {
+        CACHE.remove(key);
+      }
+    }
+  }
+}
@@ -19,18 +19,22 @@
 package com.facebook.notifications.internal.asset.handlers;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
-import android.widget.ImageView;
 
-import com.facebook.notifications.internal.asset.Asset;
 import com.facebook.notifications.internal.asset.AssetManager;
+import com.facebook.notifications.internal.asset.cache.MemoryCache;
+import com.facebook.notifications.internal.utilities.BitmapUtilities;
 import com.facebook.notifications.internal.utilities.InvalidParcelException;
+import com.facebook.notifications.internal.view.BitmapView;
+import com.facebook.notifications.internal.view.CardView;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -48,11 +52,11 @@ import java.util.Set;
 /**
  * Handles assets of the bitmap type
  */
-public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAssetHandler.BitmapAsset> {
+public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAssetHandler.BitmapAsset>, AssetManager.PreviewableAssetHandler {
   /**
    * A resource implementation for Bitmaps read from disk
    */
-  static class BitmapAsset implements Asset {
+  static class BitmapAsset implements AssetManager.DecodableAsset, BitmapView.BitmapSource {
     public static final Creator<BitmapAsset> CREATOR = new Creator<BitmapAsset>() {
       @Override
       public BitmapAsset createFromParcel(Parcel source) {
@@ -65,24 +69,32 @@ public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAsset
       }
     };
     private final @NonNull File createdFrom;
+    private final boolean opaqueHint;
     private transient @Nullable Bitmap bitmap;
+    private transient int width = -1;
+    private transient int height = -1;
+    private transient @Nullable String mimeType;
+    private transient @Nullable Boolean opaque;
 
-    private BitmapAsset(@NonNull File createdFrom) {
+    BitmapAsset(@NonNull File createdFrom, boolean opaqueHint) {
       this.createdFrom = createdFrom;
+      this.opaqueHint = opaqueHint;
     }
 
     private BitmapAsset(@NonNull Parcel parcel) {
       createdFrom = new File(parcel.readString());
+      opaqueHint = parcel.readInt() != 0;
     }
 
     @Nullable
-    private static Bitmap decodeBitmap(@NonNull File file) {
+    private static Bitmap decodeBitmap(@NonNull File file, @NonNull Bitmap.Config config, int sampleSize) {
       try {
         // NOTE: We must be careful when decoding images on android. If a malicious push sends down
         // a payload image that is too large for us to reasonably decode, we must ensure that we can
         // safely fall back to a lower resolution if we don't have the memory for it.
         BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inSampleSize = 1;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
 
         while (true) {
           InputStream cachedData = new FileInputStream(file);
@@ -103,22 +115,116 @@ public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAsset
       }
     }
 
+    /**
+     * Get the largest power of two that an image can be subsampled by, while still filling a view of
+     * the target size. Images are drawn with FIT_CENTER, so only one side has to fill the view.
+     *
+     * @return The sample size, or 1 if the size of the image or of the view is not known.
+     */
+    static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+      int sampleSize = 1;
+      if (targetWidth > 0 && targetHeight > 0) {
+        while (width / (sampleSize * 2) >= targetWidth || height / (sampleSize * 2) >= targetHeight) {
+          sampleSize *= 2;
+        }
+      }
+      return sampleSize;
+    }
+
+    private void decodeBounds() {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(createdFrom.getAbsolutePath(), options);
+
+      width = Math.max(0, options.outWidth);
+      height = Math.max(0, options.outHeight);
+      mimeType = options.outMimeType;
+    }
+
+    /**
+     * Whether or not the image can be decoded without an alpha channel, either because the payload
+     * told us so, or because its format can't carry one.
+     */
+    private boolean isOpaque() {
+      if (opaque == null) {
+        if (width == -1) {
+          decodeBounds();
+        }
+        opaque = opaqueHint || BitmapUtilities.isOpaque(createdFrom, mimeType);
+      }
+      return opaque;
+    }
+
+    /**
+     * Get the config the image is decoded with.
+     */
+    @NonNull
+    Bitmap.Config getConfig() {
+      return BitmapUtilities.getPreferredConfig(isOpaque(), true);
+    }
+
     @NonNull
     public File getCreatedFrom() {
       return createdFrom;
     }
 
-    @NonNull
-    public Bitmap getBitmap() {
+    @Nullable
+    @Override
+    public Bitmap getCachedBitmap() {
       if (bitmap == null) {
-        bitmap = decodeBitmap(createdFrom);
+        bitmap = MemoryCache.get(createdFrom, Bitmap.class);
+      }
+      return bitmap;
+    }
+
+    @Nullable
+    @Override
+    public Bitmap getBitmap(int targetWidth, int targetHeight) {
+      Bitmap bitmap = getCachedBitmap();
+      int sampleSize = getSampleSize(getWidth(), getHeight(), targetWidth, targetHeight);
+
+      // A bitmap decoded for a smaller view would be drawn blurry, decode it again at this size.
+      if (bitmap == null || bitmap.getWidth() < getWidth() / sampleSize) {
+        bitmap = decodeBitmap(createdFrom, getConfig(), sampleSize);
         if (bitmap == null) {
-          throw new RuntimeException("Failed to decode bitmap from file");
+          Log.e(LOG_TAG, "Failed to decode bitmap from file: " + createdFrom.getAbsolutePath());
+          return null;
         }
+        MemoryCache.put(createdFrom, Bitmap.class, bitmap, bitmap.getByteCount());
+        this.bitmap = bitmap;
       }
       return bitmap;
     }
 
+    @Override
+    public void decode() {
+      // The view isn't measured yet, but cards never draw their assets larger than the largest card,
+      // so decode at that size. A smaller view can still use this bitmap.
+      DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+      int screenSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+
+      getBitmap(
+        Math.min(screenSize, Math.round(CardView.MAX_WIDTH_DIP * metrics.density)),
+        Math.min(screenSize, Math.round(CardView.MAX_HEIGHT_DIP * metrics.density))
+      );
+    }
+
+    @Override
+    public int getWidth() {
+      if (width == -1) {
+        decodeBounds();
+      }
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      if (height == -1) {
+        decodeBounds();
+      }
+      return height;
+    }
+
     @NonNull
     @Override
     public String getType() {
@@ -144,11 +250,13 @@ public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAsset
     @Override
     public void writeToParcel(Parcel dest, int flags) {
       dest.writeString(createdFrom.getAbsolutePath());
+      dest.writeInt(opaqueHint ? 1 : 0);
     }
   }
 
   public static final String TYPE = "Image";
   private static final String LOG_TAG = BitmapAssetHandler.class.getCanonicalName();
+  private static final int PREVIEW_SAMPLE_SIZE = 4;
 
   @Nullable
   @Override
@@ -169,19 +277,34 @@ public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAsset
   @Nullable
   @Override
   public BitmapAsset createAsset(@NonNull JSONObject payload, @NonNull AssetManager.AssetCache cache) {
-    try {
-      URL url = new URL(payload.getString("url"));
-      File cacheFile = cache.getCachedFile(url);
-      if (cacheFile == null) {
-        return null;
-      }
+    // The URL was already read from the payload when it was cached.
+    Set<URL> urls = cache.getCacheURLs(payload);
+    if (urls == null || urls.isEmpty()) {
+      Log.e(LOG_TAG, "JSON key 'url' was missing or not a valid URL.");
+      return null;
+    }
 
-      return new BitmapAsset(cacheFile);
-    } catch (MalformedURLException ex) {
-      Log.e(LOG_TAG, "JSON key 'url' was not a valid URL", ex);
+    File cacheFile = cache.getCachedFile(urls.iterator().next());
+    if (cacheFile == null) {
       return null;
-    } catch (JSONException ex) {
-      Log.e(LOG_TAG, "JSON exception", ex);
+    }
+
+    return new BitmapAsset(cacheFile, payload.optBoolean("opaque", false));
+  }
+
+  @Nullable
+  @Override
+  public Bitmap createPreview(@NonNull JSONObject payload, @NonNull File partialFile) {
+    // Truncated JPEGs (progressive ones in particular) and interlaced PNGs still decode into a
+    // recognizable, if blurry, image. Anything else simply fails to decode until it is complete.
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = PREVIEW_SAMPLE_SIZE;
+    options.inPreferredConfig = Bitmap.Config.RGB_565;
+
+    try {
+      return BitmapFactory.decodeFile(partialFile.getAbsolutePath(), options);
+    } catch (OutOfMemoryError ex) {
+      // A preview is never worth running out of memory for.
       return null;
     }
   }
@@ -189,11 +312,6 @@ public class BitmapAssetHandler implements AssetManager.AssetHandler<BitmapAsset
   @NonNull
   @Override
   public View createView(@NonNull BitmapAsset asset, @NonNull Context context) {
-    ImageView imageView = new ImageView(context);
-    imageView.setImageBitmap(asset.getBitmap());
-    imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
-    imageView.setAdjustViewBounds(true);
-
-    return imageView;
+    return new BitmapView(context, asset);
   }
 }
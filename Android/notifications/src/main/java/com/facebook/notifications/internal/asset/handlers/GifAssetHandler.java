@@ -19,27 +19,35 @@
 package com.facebook.notifications.internal.asset.handlers;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 
-import com.facebook.notifications.internal.asset.Asset;
 import com.facebook.notifications.internal.asset.AssetManager;
+import com.facebook.notifications.internal.asset.cache.MemoryCache;
+import com.facebook.notifications.internal.utilities.AnimationDecoder;
+import com.facebook.notifications.internal.utilities.FileUtilities;
+import com.facebook.notifications.internal.utilities.FrameCacheDecoder;
 import com.facebook.notifications.internal.utilities.GifDecoder;
+import com.facebook.notifications.internal.utilities.GifImage;
 import com.facebook.notifications.internal.utilities.InvalidParcelException;
+import com.facebook.notifications.internal.view.CardView;
 import com.facebook.notifications.internal.view.GifView;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -50,7 +58,7 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
   /**
    * A resource implementation for GIFs read from disk
    */
-  static class GifAsset implements Asset {
+  static class GifAsset implements AssetManager.DecodableAsset, AssetManager.PosterAsset {
     public static final Creator<GifAsset> CREATOR = new Creator<GifAsset>() {
       @Override
       public GifAsset createFromParcel(Parcel source) {
@@ -63,7 +71,7 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
       }
     };
     private final @NonNull File createdFrom;
-    private transient @Nullable GifDecoder decoder;
+    private transient @Nullable GifImage image;
 
     private GifAsset(@NonNull File createdFrom) {
       this.createdFrom = createdFrom;
@@ -74,42 +82,123 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
     }
 
     @Nullable
-    private static GifDecoder decodeGif(@NonNull File file) {
-      long fileLength = file.length();
-      if (fileLength == 0 || fileLength > Integer.MAX_VALUE) {
+    private static GifImage readGif(@NonNull File file) {
+      ByteBuffer data;
+      try {
+        data = FileUtilities.mapFile(file);
+      } catch (IOException ex) {
+        Log.e(LOG_TAG, "IO Exception while reading GIF data", ex);
+        return null;
+      }
+
+      if (data.limit() == 0) {
+        return null;
+      }
+
+      GifImage image = GifImage.read(data);
+      if (image.getFrameCount() == 0) {
+        Log.e(LOG_TAG, "GIF has no readable frames, status: " + image.getStatus());
         return null;
       }
 
-      byte[] bytes = new byte[(int) fileLength];
+      return image;
+    }
+
+    @NonNull
+    private static GifDecoder createDecoder(@NonNull GifImage image) {
+      // Cards never draw their assets larger than the largest card, so there's no point compositing
+      // frames at a higher resolution than that. Views narrow this down to their size once measured.
+      DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+      int screenSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+
+      GifDecoder decoder = new GifDecoder(image);
+      decoder.setTargetSize(
+        Math.min(screenSize, Math.round(CardView.MAX_WIDTH_DIP * metrics.density)),
+        Math.min(screenSize, Math.round(CardView.MAX_HEIGHT_DIP * metrics.density))
+      );
+
+      return decoder;
+    }
+
+    /**
+     * Decode the first frame of a GIF, scaled down to fit in a poster.
+     *
+     * @return The poster, or null if the first frame could not be decoded.
+     */
+    @Nullable
+    private static Bitmap createPoster(@NonNull GifImage image) {
+      GifDecoder decoder = new GifDecoder(image);
+      decoder.setTargetSize(POSTER_MAX_SIZE, POSTER_MAX_SIZE);
 
       try {
-        FileInputStream fileInputStream = new FileInputStream(file);
-        int fileOffset = 0;
-
-        try {
-          while (true) {
-            int remaining = (bytes.length - fileOffset);
-            if (remaining == 0) {
-              break;
-            }
-            int read = fileInputStream.read(bytes, fileOffset, remaining);
-            if (read == -1) {
-              throw new IOException("File was shorter than expected!");
-            }
-            fileOffset += read;
-          }
-        } finally {
-          fileInputStream.close();
+        decoder.advance();
+        Bitmap frame = decoder.getNextFrame();
+        if (frame == null) {
+          return null;
         }
-      } catch (IOException ex) {
-        Log.e(LOG_TAG, "IO Exception while reading GIF data", ex);
+
+        // The frame belongs to the decoder, which is recycled below, so the poster is always a copy.
+        float scale = Math.min(1f, (float) POSTER_MAX_SIZE / Math.max(frame.getWidth(), frame.getHeight()));
+        if (scale == 1f) {
+          return frame.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        return Bitmap.createScaledBitmap(
+          frame,
+          Math.max(1, Math.round(frame.getWidth() * scale)),
+          Math.max(1, Math.round(frame.getHeight() * scale)),
+          true
+        );
+      } catch (OutOfMemoryError ex) {
+        Log.w(LOG_TAG, "Out of memory creating GIF poster", ex);
         return null;
+      } finally {
+        decoder.recycle();
       }
+    }
 
-      GifDecoder decoder = new GifDecoder();
-      decoder.read(bytes);
+    @Nullable
+    private GifImage getImage() {
+      if (image == null) {
+        image = MemoryCache.get(createdFrom, GifImage.class);
+      }
+      if (image == null) {
+        image = readGif(createdFrom);
+        if (image != null) {
+          MemoryCache.put(createdFrom, GifImage.class, image, image.getByteCount());
+        }
+      }
+      return image;
+    }
 
-      return decoder;
+    @Override
+    public void decode() {
+      GifImage image = getImage();
+      if (image != null) {
+        FrameCacheDecoder frameCache = new FrameCacheDecoder(createDecoder(image), FrameCacheDecoder.DEFAULT_MAX_BYTE_COUNT);
+        frameCache.prerender();
+        MemoryCache.put(createdFrom, FrameCacheDecoder.class, frameCache, frameCache.getByteCount());
+      }
+    }
+
+    @Override
+    public void extractPoster() {
+      if (getPoster() != null) {
+        return;
+      }
+
+      GifImage image = getImage();
+      if (image != null) {
+        Bitmap poster = createPoster(image);
+        if (poster != null) {
+          MemoryCache.put(createdFrom, Bitmap.class, poster, poster.getByteCount());
+        }
+      }
+    }
+
+    @Nullable
+    @Override
+    public Bitmap getPoster() {
+      return MemoryCache.get(createdFrom, Bitmap.class);
     }
 
     @NonNull
@@ -117,15 +206,26 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
       return createdFrom;
     }
 
-    @NonNull
-    public GifDecoder getDecoder() {
-      if (decoder == null) {
-        decoder = decodeGif(createdFrom);
-        if (decoder == null) {
-          throw new RuntimeException("Failed to decode GIF");
-        }
+    /**
+     * Get a new decoder for this GIF. Decoders are stateful and recycled by their view, so each view
+     * needs its own, but they all share a single parsed image.
+     *
+     * @return A new decoder, or null if the GIF could not be read.
+     */
+    @Nullable
+    public AnimationDecoder getDecoder() {
+      // A decoder pre-rendered while preparing the card can only be used once.
+      AnimationDecoder decoder = MemoryCache.remove(createdFrom, FrameCacheDecoder.class);
+      if (decoder != null) {
+        return decoder;
       }
-      return decoder;
+
+      GifImage image = getImage();
+      if (image == null) {
+        return null;
+      }
+      // Frames are cached during the first loop, if they fit.
+      return new FrameCacheDecoder(createDecoder(image), FrameCacheDecoder.DEFAULT_MAX_BYTE_COUNT);
     }
 
     @NonNull
@@ -159,6 +259,9 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
   public static final String TYPE = "GIF";
   private static final String LOG_TAG = GifAssetHandler.class.getCanonicalName();
 
+  // Large enough for a notification's big picture, small enough to be sent along with it.
+  private static final int POSTER_MAX_SIZE = 384;
+
   @Nullable
   @Override
   public Set<URL> getCacheURLs(@NonNull JSONObject payload) {
@@ -178,26 +281,24 @@ public class GifAssetHandler implements AssetManager.AssetHandler<GifAssetHandle
   @Nullable
   @Override
   public GifAsset createAsset(@NonNull JSONObject payload, @NonNull AssetManager.AssetCache cache) {
-    try {
-      URL url = new URL(payload.getString("url"));
-      File cacheFile = cache.getCachedFile(url);
-      if (cacheFile == null) {
-        return null;
-      }
-
-      return new GifAsset(cacheFile);
-    } catch (MalformedURLException ex) {
-      Log.e(LOG_TAG, "JSON key 'url' was not a valid URL.", ex);
+    // The URL was already read from the payload when it was cached.
+    Set<URL> urls = cache.getCacheURLs(payload);
+    if (urls == null || urls.isEmpty()) {
+      Log.e(LOG_TAG, "JSON key 'url' was missing or not a valid URL.");
       return null;
-    } catch (JSONException ex) {
-      Log.e(LOG_TAG, "JSON exception", ex);
+    }
+
+    File cacheFile = cache.getCachedFile(urls.iterator().next());
+    if (cacheFile == null) {
       return null;
     }
+
+    return new GifAsset(cacheFile);
   }
 
   @NonNull
   @Override
   public View createView(@NonNull GifAsset asset, @NonNull Context context) {
-    return new GifView(context, asset.getDecoder());
+    return new GifView(context, asset.getDecoder(), asset.getPoster());
   }
 }
@@ -0,0 +1,194 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.asset.handlers;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.View;
+
+import com.facebook.notifications.internal.asset.AssetManager;
+import com.facebook.notifications.internal.asset.cache.MemoryCache;
+import com.facebook.notifications.internal.utilities.AnimationDecoder;
+import com.facebook.notifications.internal.utilities.FrameCacheDecoder;
+import com.facebook.notifications.internal.utilities.WebPDecoder;
+import com.facebook.notifications.internal.utilities.InvalidParcelException;
+import com.facebook.notifications.internal.view.GifView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Handles assets of the WebP type, both still and animated.
+ */
+public class WebPAssetHandler implements AssetManager.AssetHandler<WebPAssetHandler.WebPAsset> {
+  /**
+   * A resource implementation for WebP images read from disk
+   */
+  static class WebPAsset implements AssetManager.DecodableAsset {
+    public static final Creator<WebPAsset> CREATOR = new Creator<WebPAsset>() {
+      @Override
+      public WebPAsset createFromParcel(Parcel source) {
+        return new WebPAsset(source);
+      }
+
+      @Override
+      public WebPAsset[] newArray(int size) {
+        return new WebPAsset[size];
+      }
+    };
+    private final @NonNull File createdFrom;
+
+    private WebPAsset(@NonNull File createdFrom) {
+      this.createdFrom = createdFrom;
+    }
+
+    private WebPAsset(@NonNull Parcel source) {
+      createdFrom = new File(source.readString());
+    }
+
+    @Nullable
+    private static WebPDecoder decodeWebP(@NonNull File file) {
+      WebPDecoder decoder = new WebPDecoder();
+      if (decoder.read(file) != WebPDecoder.STATUS_OK) {
+        decoder.recycle();
+        return null;
+      }
+
+      return decoder;
+    }
+
+    @Override
+    public void decode() {
+      WebPDecoder decoder = decodeWebP(createdFrom);
+      if (decoder != null) {
+        FrameCacheDecoder frameCache = new FrameCacheDecoder(decoder, FrameCacheDecoder.DEFAULT_MAX_BYTE_COUNT);
+        frameCache.prerender();
+        MemoryCache.put(createdFrom, FrameCacheDecoder.class, frameCache, frameCache.getByteCount());
+      }
+    }
+
+    @NonNull
+    public File getCreatedFrom() {
+      return createdFrom;
+    }
+
+    /**
+     * Get a new decoder for this WebP. Decoders are stateful and recycled by their view, so each view
+     * needs its own.
+     *
+     * @return A new decoder, or null if the WebP could not be read.
+     */
+    @Nullable
+    public AnimationDecoder getDecoder() {
+      // A decoder pre-rendered while preparing the card can only be used once.
+      AnimationDecoder decoder = MemoryCache.remove(createdFrom, FrameCacheDecoder.class);
+      if (decoder != null) {
+        return decoder;
+      }
+
+      WebPDecoder streamingDecoder = decodeWebP(createdFrom);
+      if (streamingDecoder == null) {
+        Log.e(LOG_TAG, "Failed to decode WebP: " + createdFrom.getAbsolutePath());
+        return null;
+      }
+      // Frames are cached during the first loop, if they fit.
+      return new FrameCacheDecoder(streamingDecoder, FrameCacheDecoder.DEFAULT_MAX_BYTE_COUNT);
+    }
+
+    @NonNull
+    @Override
+    public String getType() {
+      return TYPE;
+    }
+
+    @Override
+    public void validate() throws InvalidParcelException {
+      if (!createdFrom.exists()) {
+        throw new InvalidParcelException(
+          new FileNotFoundException(
+            "WebP cache file does not exist: " + createdFrom.getAbsolutePath()
+          )
+        );
+      }
+    }
+
+    @Override
+    public int describeContents() {
+      return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+      dest.writeString(createdFrom.getAbsolutePath());
+    }
+  }
+
+  public static final String TYPE = "WebP";
+  private static final String LOG_TAG = WebPAssetHandler.class.getCanonicalName();
+
+  @Nullable
+  @Override
+  public Set<URL> getCacheURLs(@NonNull JSONObject payload) {
+    try {
+      URL url = new URL(payload.getString("url"));
+      Set<URL> set = new HashSet<>();
+      set.add(url);
+
+      return set;
+    } catch (MalformedURLException ex) {
+      return null;
+    } catch (JSONException ex) {
+      return null;
+    }
+  }
+
+  @Nullable
+  @Override
+  public WebPAsset createAsset(@NonNull JSONObject payload, @NonNull AssetManager.AssetCache cache) {
+    // The URL was already read from the payload when it was cached.
+    Set<URL> urls = cache.getCacheURLs(payload);
+    if (urls == null || urls.isEmpty()) {
+      Log.e(LOG_TAG, "JSON key 'url' was missing or not a valid URL.");
+      return null;
+    }
+
+    File cacheFile = cache.getCachedFile(urls.iterator().next());
+    if (cacheFile == null) {
+      return null;
+    }
+
+    return new WebPAsset(cacheFile);
+  }
+
+  @NonNull
+  @Override
+  public View createView(@NonNull WebPAsset asset, @NonNull Context context) {
+    return new GifView(context, asset.getDecoder());
+  }
+}
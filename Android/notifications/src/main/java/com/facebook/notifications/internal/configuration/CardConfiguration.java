@@ -24,6 +24,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.facebook.notifications.internal.asset.Asset;
 import com.facebook.notifications.internal.asset.AssetManager;
 import com.facebook.notifications.internal.asset.handlers.ColorAssetHandler;
 import com.facebook.notifications.internal.content.ContentManager;
@@ -33,6 +34,9 @@ import com.facebook.notifications.internal.utilities.InvalidParcelException;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CardConfiguration implements Parcelable {
   public enum CardSize implements Parcelable {
     Invalid,
@@ -165,6 +169,24 @@ public class CardConfiguration implements Parcelable {
     return actionsConfiguration;
   }
 
+  /**
+   * Get all of the assets displayed by this card.
+   */
+  @NonNull
+  public List<Asset> getAssets() {
+    List<Asset> assets = new ArrayList<>();
+    if (heroConfiguration != null && heroConfiguration.getBackground() != null) {
+      assets.add(heroConfiguration.getBackground());
+    }
+    if (bodyConfiguration != null && bodyConfiguration.getBackground() != null) {
+      assets.add(bodyConfiguration.getBackground());
+    }
+    if (actionsConfiguration != null && actionsConfiguration.getBackground() != null) {
+      assets.add(actionsConfiguration.getBackground());
+    }
+    return assets;
+  }
+
   @Override
   public int describeContents() {
     return 0;
@@ -0,0 +1,109 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.configuration;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.facebook.notifications.internal.appevents.AppEventsLogger;
+import com.facebook.notifications.internal.utilities.JSONPayload;
+import com.facebook.notifications.internal.utilities.Version;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The payload of a push notification, parsed once when it is received and then handed through
+ * every step of preparing and presenting it.
+ * <p/>
+ * The parsed JSON objects must not be modified, as they are shared between those steps.
+ */
+public final class NotificationPayload {
+  private final @NonNull String cardPayload;
+  private final @NonNull JSONPayload card;
+  private final @NonNull JSONObject cardJSON;
+  private final @Nullable Version version;
+  private final @NonNull JSONObject alert;
+  private final @Nullable String campaignIdentifier;
+
+  /**
+   * @param cardPayload The JSON of the card
+   * @param pushPayload The JSON of the push, if present
+   */
+  public NotificationPayload(@NonNull String cardPayload, @Nullable String pushPayload) throws JSONException {
+    this.cardPayload = cardPayload;
+    card = JSONPayload.parse(cardPayload);
+    cardJSON = card.getRoot();
+    version = Version.parse(cardJSON.optString("version"));
+
+    JSONObject alert = cardJSON.optJSONObject("alert");
+    this.alert = alert != null ? alert : new JSONObject();
+
+    campaignIdentifier = pushPayload != null
+      ? AppEventsLogger.getCampaignIdentifier(new JSONObject(pushPayload))
+      : null;
+  }
+
+  /**
+   * Get the JSON of the card, as it was received. Use this to hand the card over to another process,
+   * rather than serializing it again.
+   */
+  @NonNull
+  public String getCardPayload() {
+    return cardPayload;
+  }
+
+  /**
+   * Get the parsed card, along with the assets found while parsing it.
+   */
+  @NonNull
+  public JSONPayload getCard() {
+    return card;
+  }
+
+  @NonNull
+  public JSONObject getCardJSON() {
+    return cardJSON;
+  }
+
+  @Nullable
+  public Version getVersion() {
+    return version;
+  }
+
+  /**
+   * Get the alert to show in the notification tray, or an empty object if the card has none.
+   */
+  @NonNull
+  public JSONObject getAlert() {
+    return alert;
+  }
+
+  @Nullable
+  public String getCampaignIdentifier() {
+    return campaignIdentifier;
+  }
+
+  /**
+   * Get an identifier for this payload, shared by every notification with the same card.
+   */
+  public int getPayloadHash() {
+    return cardPayload.hashCode();
+  }
+}
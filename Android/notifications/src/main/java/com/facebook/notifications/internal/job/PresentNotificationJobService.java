@@ -0,0 +1,131 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.job;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.PersistableBundle;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.facebook.notifications.NotificationsManager;
+
+import java.net.URISyntaxException;
+
+/**
+ * Presents a notification as a job, so that the process is kept alive while its assets download.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PresentNotificationJobService extends JobService {
+  private static final String LOG_TAG = PresentNotificationJobService.class.getCanonicalName();
+  private static final String EXTRA_LAUNCHER_INTENT = "launcher_intent";
+  // Values of the notification bundle are prefixed, so they can never collide with our own extras.
+  private static final String NOTIFICATION_EXTRA_PREFIX = "notification.";
+
+  /**
+   * Schedule a notification to be presented once a network connection is available.
+   *
+   * @param context            The context to schedule the job from
+   * @param jobId              The id of the job, which replaces any scheduled job with the same id
+   * @param notificationBundle The content of the push notification, of which only strings are kept
+   * @param launcherIntent     The launcher intent to present the notification with
+   * @return Whether or not the job could be scheduled.
+   */
+  public static boolean schedule(
+    @NonNull Context context,
+    int jobId,
+    @NonNull Bundle notificationBundle,
+    @NonNull Intent launcherIntent
+  ) {
+    PersistableBundle extras = new PersistableBundle();
+    for (String key : notificationBundle.keySet()) {
+      Object value = notificationBundle.get(key);
+      if (value instanceof String) {
+        extras.putString(NOTIFICATION_EXTRA_PREFIX + key, (String) value);
+      }
+    }
+    extras.putString(EXTRA_LAUNCHER_INTENT, launcherIntent.toUri(Intent.URI_INTENT_SCHEME));
+
+    JobInfo job = new JobInfo.Builder(jobId, new ComponentName(context, PresentNotificationJobService.class))
+      .setExtras(extras)
+      .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+      .build();
+
+    JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    return scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS;
+  }
+
+  @Override
+  public boolean onStartJob(final JobParameters params) {
+    PersistableBundle extras = params.getExtras();
+
+    String launcherUri = extras.getString(EXTRA_LAUNCHER_INTENT);
+    if (launcherUri == null) {
+      return false;
+    }
+
+    Intent launcherIntent;
+    try {
+      launcherIntent = Intent.parseUri(launcherUri, Intent.URI_INTENT_SCHEME);
+    } catch (URISyntaxException ex) {
+      Log.e(LOG_TAG, "Failed to read launcher intent", ex);
+      return false;
+    }
+
+    Bundle notificationBundle = new Bundle();
+    for (String key : extras.keySet()) {
+      if (key.startsWith(NOTIFICATION_EXTRA_PREFIX)) {
+        notificationBundle.putString(key.substring(NOTIFICATION_EXTRA_PREFIX.length()), extras.getString(key));
+      }
+    }
+
+    // Keep running until the notification has been presented, or has failed to be.
+    return NotificationsManager.presentNotificationAsync(
+      this,
+      notificationBundle,
+      launcherIntent,
+      null,
+      new NotificationsManager.PresentCallback() {
+        @Override
+        public void onPresented() {
+          jobFinished(params, false);
+        }
+
+        @Override
+        public void onError(@NonNull Exception exception) {
+          jobFinished(params, false);
+        }
+      }
+    );
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    // Downloads already started carry on for as long as the process lives, don't start them over.
+    return false;
+  }
+}
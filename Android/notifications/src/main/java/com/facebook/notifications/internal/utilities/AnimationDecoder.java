@@ -0,0 +1,78 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.graphics.Bitmap;
+
+/**
+ * Decodes the frames of an animated image one at a time, in animation order.
+ *
+ * The animation must be manually moved forward using {@link #advance()} before requesting the next
+ * frame. This method must also be called before you request the first frame.
+ */
+public interface AnimationDecoder {
+  /**
+   * Move the animation frame counter forward
+   */
+  void advance();
+
+  /**
+   * Gets display duration for the upcoming frame, in milliseconds
+   */
+  int getNextDelay();
+
+  /**
+   * Get the next frame in the animation sequence.
+   *
+   * @return Bitmap representation of frame, or null if it could not be decoded
+   */
+  Bitmap getNextFrame();
+
+  /**
+   * Gets the number of frames in the animation.
+   */
+  int getFrameCount();
+
+  /**
+   * Gets the number of times to play the animation. A count of 0 means repeat indefinitely.
+   */
+  int getLoopCount();
+
+  int getWidth();
+
+  int getHeight();
+
+  /**
+   * Sets the size that frames will be drawn at, so that large animations can be decoded at a lower
+   * resolution. If this changes the size of the frames, the animation restarts from its first frame.
+   *
+   * @return true if the size of the frames changed
+   */
+  boolean setTargetSize(int targetWidth, int targetHeight);
+
+  /**
+   * Gets the approximate amount of memory held by this decoder.
+   */
+  int getByteCount();
+
+  /**
+   * Recycle any bitmaps held by this decoder. After recycling, the decoder can no longer be used.
+   */
+  void recycle();
+}
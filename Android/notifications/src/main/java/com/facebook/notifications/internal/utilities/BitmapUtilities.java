@@ -0,0 +1,185 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class BitmapUtilities {
+  // Bitmap.Config.HARDWARE was added in API 26, which is newer than the SDK we compile against.
+  private static final int HARDWARE_BITMAP_SDK_INT = 26;
+
+  private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+  private static final int PNG_CHUNK_IHDR = 0x49484452;
+  private static final int PNG_CHUNK_TRNS = 0x74524E53;
+  private static final int PNG_CHUNK_IDAT = 0x49444154;
+  private static final int PNG_COLOR_TYPE_ALPHA_MASK = 0x04;
+
+  private static final @Nullable Bitmap.Config HARDWARE_CONFIG = findHardwareConfig(Build.VERSION.SDK_INT);
+
+  /**
+   * Find the hardware bitmap config, if the platform supports it.
+   *
+   * @param sdkInt The API level of the platform
+   * @return The hardware config, or null if hardware bitmaps are not supported
+   */
+  @Nullable
+  static Bitmap.Config findHardwareConfig(int sdkInt) {
+    if (sdkInt < HARDWARE_BITMAP_SDK_INT) {
+      return null;
+    }
+
+    try {
+      return Bitmap.Config.valueOf("HARDWARE");
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the bitmap config to decode an image with.
+   *
+   * @param opaque        Whether or not the image is known to have no transparency
+   * @param allowHardware Whether or not the decoder supports hardware bitmaps. Hardware bitmaps
+   *                      can not be region decoded, and their pixels can not be read back.
+   * @return The config which uses the least application memory for the image
+   */
+  @NonNull
+  public static Bitmap.Config getPreferredConfig(boolean opaque, boolean allowHardware) {
+    return getPreferredConfig(opaque, allowHardware, HARDWARE_CONFIG);
+  }
+
+  @NonNull
+  static Bitmap.Config getPreferredConfig(boolean opaque, boolean allowHardware, @Nullable Bitmap.Config hardwareConfig) {
+    if (allowHardware && hardwareConfig != null) {
+      // Hardware bitmaps live only in graphics memory, which beats any in-heap config.
+      return hardwareConfig;
+    }
+    return opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+  }
+
+  /**
+   * Get the number of bytes of application memory each pixel of a bitmap with the given config
+   * takes. Hardware bitmaps take none, as their pixels are only kept in graphics memory.
+   */
+  public static int getBytesPerPixel(@NonNull Bitmap.Config config) {
+    switch (config.name()) {
+      case "ALPHA_8":
+        return 1;
+      case "RGB_565":
+      case "ARGB_4444":
+        return 2;
+      case "RGBA_F16":
+        return 8;
+      case "HARDWARE":
+        return 0;
+      default:
+        return 4;
+    }
+  }
+
+  /**
+   * Get the amount of application memory a bitmap would take.
+   *
+   * @param width  The width of the bitmap, in pixels
+   * @param height The height of the bitmap, in pixels
+   * @param config The config of the bitmap
+   * @return The size of the bitmap's pixels, in bytes
+   */
+  public static long getByteCount(int width, int height, @NonNull Bitmap.Config config) {
+    return (long) width * height * getBytesPerPixel(config);
+  }
+
+  /**
+   * Determine whether an image file is known to have no alpha channel, without decoding it.
+   *
+   * @param file     The image file
+   * @param mimeType The mime type of the image, as reported by a bounds-only decode
+   * @return true if every pixel of the image is guaranteed to be opaque
+   */
+  public static boolean isOpaque(@NonNull File file, @Nullable String mimeType) {
+    if ("image/jpeg".equals(mimeType)) {
+      return true;
+    }
+
+    if ("image/png".equals(mimeType)) {
+      try {
+        return isOpaquePNG(file);
+      } catch (IOException ex) {
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isOpaquePNG(@NonNull File file) throws IOException {
+    DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+
+    try {
+      if (inputStream.readLong() != PNG_SIGNATURE) {
+        return false;
+      }
+
+      // Walk the chunk headers up to the image data. IHDR tells us if there's an alpha channel,
+      // while a tRNS chunk adds transparency to images that otherwise have none.
+      while (true) {
+        int length = inputStream.readInt();
+        int type = inputStream.readInt();
+
+        switch (type) {
+          case PNG_CHUNK_IHDR: {
+            inputStream.skipBytes(9); // width, height, bit depth
+            int colorType = inputStream.readUnsignedByte();
+            if ((colorType & PNG_COLOR_TYPE_ALPHA_MASK) != 0) {
+              return false;
+            }
+            length -= 10;
+            break;
+          }
+
+          case PNG_CHUNK_TRNS:
+            return false;
+
+          case PNG_CHUNK_IDAT:
+            return true;
+        }
+
+        // Skip the remaining chunk data, as well as its CRC.
+        long toSkip = (long) length + 4;
+        while (toSkip > 0) {
+          long skipped = inputStream.skip(toSkip);
+          if (skipped <= 0) {
+            return false;
+          }
+          toSkip -= skipped;
+        }
+      }
+    } finally {
+      inputStream.close();
+    }
+  }
+}
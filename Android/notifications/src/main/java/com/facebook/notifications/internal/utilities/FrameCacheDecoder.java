@@ -0,0 +1,271 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * Wraps an {@link AnimationDecoder}, keeping a copy of every composited frame it produces.
+ *
+ * Once every frame has been seen, the wrapped decoder is recycled and all later loops are played
+ * from the copies, without decoding anything. Animations whose frames don't fit in the given budget
+ * are passed through to the wrapped decoder unchanged.
+ */
+public class FrameCacheDecoder implements AnimationDecoder {
+  private static final String LOG_TAG = FrameCacheDecoder.class.getCanonicalName();
+
+  /**
+   * The default budget for the frames of a single animation.
+   */
+  public static final int DEFAULT_MAX_BYTE_COUNT = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16);
+
+  private final @NonNull AnimationDecoder decoder;
+  private final int maxByteCount;
+  private final int frameCount;
+  private final int loopCount;
+  private int width;
+  private int height;
+
+  private @Nullable Bitmap[] frames;
+  private @Nullable int[] delays;
+  private int cachedFrameCount;
+  private boolean decoderRecycled;
+  private int framePointer = -1;
+
+  /**
+   * @param decoder      The decoder to cache the frames of. It is owned by this instance from now on.
+   * @param maxByteCount The maximum amount of memory to spend on cached frames.
+   */
+  public FrameCacheDecoder(@NonNull AnimationDecoder decoder, int maxByteCount) {
+    this.decoder = decoder;
+    this.maxByteCount = maxByteCount;
+    frameCount = decoder.getFrameCount();
+    loopCount = decoder.getLoopCount();
+    width = decoder.getWidth();
+    height = decoder.getHeight();
+
+    startCaching();
+  }
+
+  /**
+   * Start caching from the first frame, if the frames fit in the budget.
+   */
+  private void startCaching() {
+    // Assume the worst case of ARGB_8888 frames.
+    long frameBytes = BitmapUtilities.getByteCount(width, height, Bitmap.Config.ARGB_8888);
+    if (frameCount > 0 && frameBytes * frameCount <= maxByteCount) {
+      frames = new Bitmap[frameCount];
+      delays = new int[frameCount];
+    }
+  }
+
+  /**
+   * Returns true if the frames of this animation are being cached.
+   */
+  public boolean isCaching() {
+    return frames != null;
+  }
+
+  /**
+   * Returns true if every frame has been cached, and the animation no longer needs decoding.
+   */
+  public boolean isFullyCached() {
+    return frames != null && cachedFrameCount == frameCount;
+  }
+
+  /**
+   * Decode and cache every frame up front, so that even the first loop costs no decoding.
+   * Does nothing if the animation is too large to be cached.
+   */
+  public void prerender() {
+    while (isCaching() && !isFullyCached()) {
+      advance();
+      if (getNextFrame() == null) {
+        // Stop caching, and stream every frame from the wrapped decoder instead.
+        dropFrames();
+      }
+    }
+    if (!isFullyCached() && framePointer >= 0) {
+      // Move the wrapped decoder on to the last frame, so that it's back on the first one along with
+      // us after the next advance.
+      for (int i = framePointer; i < frameCount - 1; i++) {
+        decoder.advance();
+      }
+    }
+    // Start playback from the first frame again.
+    framePointer = -1;
+  }
+
+  @Override
+  public void advance() {
+    if (frameCount <= 0) {
+      return;
+    }
+
+    framePointer = (framePointer + 1) % frameCount;
+    if (!decoderRecycled) {
+      decoder.advance();
+      if (delays != null) {
+        delays[framePointer] = decoder.getNextDelay();
+      }
+    }
+  }
+
+  @Override
+  public int getNextDelay() {
+    if (framePointer < 0) {
+      return -1;
+    }
+    if (decoderRecycled) {
+      return delays[framePointer];
+    }
+    return decoder.getNextDelay();
+  }
+
+  @Override
+  public Bitmap getNextFrame() {
+    if (framePointer < 0) {
+      return null;
+    }
+
+    if (frames == null) {
+      return decoder.getNextFrame();
+    }
+
+    Bitmap cached = frames[framePointer];
+    if (cached != null) {
+      return cached;
+    }
+
+    Bitmap frame = decoder.getNextFrame();
+    if (frame == null) {
+      return null;
+    }
+
+    try {
+      cached = frame.copy(frame.getConfig(), false);
+    } catch (OutOfMemoryError ex) {
+      Log.w(LOG_TAG, "Out of memory while caching frames, falling back to decoding", ex);
+      cached = null;
+    }
+
+    if (cached == null) {
+      // Stop caching, and keep using the decoder for every frame. Frames cached so far may still be
+      // drawn, so they're left to be garbage collected rather than recycled.
+      dropFrames();
+      return frame;
+    }
+
+    frames[framePointer] = cached;
+    cachedFrameCount++;
+
+    if (isFullyCached()) {
+      // Every frame has been copied out of the decoder, so its working memory is no longer needed.
+      decoder.recycle();
+      decoderRecycled = true;
+    }
+
+    return cached;
+  }
+
+  @Override
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  @Override
+  public int getLoopCount() {
+    return loopCount;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public boolean setTargetSize(int targetWidth, int targetHeight) {
+    if (decoderRecycled) {
+      // Every frame is cached already, there's nothing left to decode at another size.
+      return false;
+    }
+    if (!decoder.setTargetSize(targetWidth, targetHeight)) {
+      return false;
+    }
+
+    // The frames cached so far are the wrong size now. They may still be drawn, so they're dropped
+    // rather than recycled, and caching starts over along with the wrapped decoder.
+    width = decoder.getWidth();
+    height = decoder.getHeight();
+    framePointer = -1;
+    dropFrames();
+    startCaching();
+    return true;
+  }
+
+  @Override
+  public int getByteCount() {
+    int byteCount = decoderRecycled ? 0 : decoder.getByteCount();
+    if (frames != null) {
+      for (Bitmap frame : frames) {
+        if (frame != null) {
+          byteCount += frame.getByteCount();
+        }
+      }
+    }
+    return byteCount;
+  }
+
+  @Override
+  public void recycle() {
+    recycleFrames();
+    if (!decoderRecycled) {
+      decoder.recycle();
+      decoderRecycled = true;
+    }
+  }
+
+  private void recycleFrames() {
+    if (frames != null) {
+      for (Bitmap frame : frames) {
+        if (frame != null) {
+          frame.recycle();
+        }
+      }
+    }
+    dropFrames();
+  }
+
+  /**
+   * Stop caching, without recycling the frames cached so far.
+   */
+  private void dropFrames() {
+    frames = null;
+    delays = null;
+    cachedFrameCount = 0;
+  }
+}
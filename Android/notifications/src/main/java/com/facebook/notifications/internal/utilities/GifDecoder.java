@@ -28,15 +28,17 @@ import android.util.Log;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Reads frame data from a GIF image source and decodes it into individual frames
- * for animation purposes.  Image data can be read from either and InputStream source
- * or a byte[].
+ * Decodes the frames of a {@link GifImage} for animation purposes.  Image data can be read from an
+ * InputStream source, a byte[], or any ByteBuffer, such as a memory-mapped file.  Only a ByteBuffer
+ * source lets the compressed data stay off of the Java heap.
+ *
+ * A decoder is a cursor over an image: it holds only the state needed to play the animation once.
+ * The parsed image itself is never modified, so several decoders can be created for the same image,
+ * one for each view that displays it, without parsing the GIF again.
  *
  * This class is optimized for running animations with the frames, there
  * are no methods to get individual frame images, only to decode the next frame in the
@@ -51,7 +53,7 @@ import java.util.ArrayList;
  * republished under the MIT Open Source License
  */
 @SuppressWarnings("ALL")
-public class GifDecoder {
+public class GifDecoder implements AnimationDecoder {
   private static final String TAG = GifDecoder.class.getSimpleName();
 
   /**
@@ -71,118 +73,89 @@ public class GifDecoder {
    */
   protected static final int MAX_STACK_SIZE = 4096;
 
-  /**
-   * GIF Disposal Method meaning take no action
-   */
-  private static final int DISPOSAL_UNSPECIFIED = 0;
-  /**
-   * GIF Disposal Method meaning leave canvas from previous frame
-   */
-  private static final int DISPOSAL_NONE = 1;
-  /**
-   * GIF Disposal Method meaning clear canvas to background color
-   */
-  private static final int DISPOSAL_BACKGROUND = 2;
-  /**
-   * GIF Disposal Method meaning clear canvas to frame before last
-   */
-  private static final int DISPOSAL_PREVIOUS = 3;
-
   /**
    * Global status code of GIF data parsing
    */
   protected int status;
 
-  //Global File Header values and parsing flags
+  // The parsed image, shared with any other decoders for it
+  protected GifImage image;
   protected int width; // full image width
   protected int height; // full image height
-  protected boolean gctFlag; // global color table used
-  protected int gctSize; // size of global color table
-  protected int loopCount = 1; // iterations; 0 = repeat forever
-  protected int[] gct; // global color table
-  protected int[] act; // active color table
-  protected int bgIndex; // background color index
-  protected int bgColor; // background color
-  protected int pixelAspect; // pixel aspect ratio
-  protected boolean lctFlag; // local color table flag
-  protected int lctSize; // local color table size
+  protected int frameCount;
+  protected int sampleSize = 1; // subsampling of the composited frames
+  protected int sampledWidth; // composited frame width
+  protected int sampledHeight; // composited frame height
+  protected int targetWidth; // size frames are drawn at, or 0 if unknown
+  protected int targetHeight;
 
-  // Raw GIF data from input source
+  // This decoder's own view of the image data
   protected ByteBuffer rawData;
 
-  // Raw data read working array
-  protected byte[] block = new byte[256]; // current data block
-  protected int blockSize = 0; // block size last graphic control extension info
+  protected int blockSize = 0; // size of the last data sub-block read
+
+  protected int[] act = new int[256]; // active color table, copied so it can be modified
+  protected int bgColor; // background color
 
   // LZW decoder working arrays
   protected short[] prefix;
   protected byte[] suffix;
-  protected byte[] pixelStack;
+  protected short[] lengths; // length of the string for each code
+  protected byte[] lzwData; // compressed data of the current frame, without sub-block lengths
   protected byte[] mainPixels;
-  protected int[] mainScratch, copyScratch;
+  protected int[] mainScratch;
+  protected int[] copyScratch; // area saved for frames which dispose to previous, allocated on demand
 
-  protected ArrayList<GifFrame> frames; // frames read from current file
-  protected GifFrame currentFrame;
-  protected Bitmap previousImage, currentImage, renderImage;
+  protected Bitmap currentImage;
 
-  protected int framePointer;
-  protected int frameCount;
+  protected int framePointer = -1;
+  protected int lastFrameIndex = -1; // last frame composited into currentImage, or -1
+
+  // Output bitmap config, or null to pick one based on whether the GIF uses transparency
+  protected Bitmap.Config bitmapConfig;
 
   /**
-   * Inner model class housing metadata for each frame
-   */
-  private static class GifFrame {
-    public int ix, iy, iw, ih;
-    /* Control Flags */
-    public boolean interlace;
-    public boolean transparency;
-    /* Disposal Method */
-    public int dispose;
-    /* Transparency Index */
-    public int transIndex;
-    /* Delay, in ms, to next frame */
-    public int delay;
-    /* Index in the raw buffer where we need to start reading to decode */
-    public int bufferFrameStart;
-    /* Local Color Table */
-    public int[] lct;
+   * Creates a decoder which must be given an image with one of the read methods.
+   */
+  public GifDecoder() {
+  }
+
+  /**
+   * Creates a decoder for an image which has already been read.
+   */
+  public GifDecoder(GifImage image) {
+    setImage(image);
   }
 
   /**
    * Move the animation frame counter forward
    */
   public void advance() {
+    if (frameCount <= 0) {
+      return;
+    }
     framePointer = (framePointer + 1) % frameCount;
   }
 
   /**
    * Recycle any bitmaps held by this GIF decoder, as well as any intermediate data. After
-   * recycling, the decoder can no longer be used.
+   * recycling, the decoder can no longer be used. The image it decodes is not affected.
    */
   public void recycle() {
-    if (previousImage != null) {
-      previousImage.recycle();
-    }
-
     if (currentImage != null) {
       currentImage.recycle();
     }
 
-    if (renderImage != null) {
-      renderImage.recycle();
-    }
-
-    gct = null;
     act = null;
-    block = null;
     prefix = null;
     suffix = null;
-    pixelStack = null;
+    lengths = null;
+    lzwData = null;
     mainPixels = null;
     mainScratch = null;
     copyScratch = null;
-    currentFrame = null;
-    frames = null;
+    rawData = null;
+    image = null;
   }
 
   /**
@@ -192,11 +165,7 @@ public class GifDecoder {
    * @return delay in milliseconds
    */
   public int getDelay(int n) {
-    int delay = -1;
-    if ((n >= 0) && (n < frameCount)) {
-      delay = frames.get(n).delay;
-    }
-    return delay;
+    return image != null ? image.getDelay(n) : -1;
   }
 
   /**
@@ -234,15 +203,93 @@ public class GifDecoder {
    * @return iteration count if one was specified, else 1.
    */
   public int getLoopCount() {
-    return loopCount;
+    return image != null ? image.getLoopCount() : 1;
   }
 
+  /**
+   * Gets the width of the frames, which is smaller than the GIF's if it is being subsampled.
+   */
   public int getWidth() {
-    return width;
+    return sampledWidth;
   }
 
+  /**
+   * Gets the height of the frames, which is smaller than the GIF's if it is being subsampled.
+   */
   public int getHeight() {
-    return height;
+    return sampledHeight;
+  }
+
+  /**
+   * Gets the image this decoder decodes, or null if none has been read.
+   */
+  public GifImage getImage() {
+    return image;
+  }
+
+  /**
+   * Gets the approximate amount of memory held by this decoder's working buffers and bitmaps, once
+   * it has started decoding. The image it decodes is not included.
+   *
+   * @return byte count
+   */
+  public int getByteCount() {
+    Bitmap.Config config = getConfig();
+    int bitmapBytes = (config == Bitmap.Config.RGB_565) ? 2 : 4;
+    int copyBytes = copyScratch != null ? 4 : 0;
+    // mainPixels at full size, and mainScratch, copyScratch, and the bitmap at the sampled size.
+    return width * height + sampledWidth * sampledHeight * (4 + copyBytes + bitmapBytes);
+  }
+
+  /**
+   * Sets the config of the bitmaps that frames are composited into. Must be called before the first
+   * frame is decoded.
+   *
+   * @param config The config to use, or null (the default) to use RGB_565 for GIFs without any
+   *               transparency, and ARGB_8888 for all others.
+   */
+  public void setBitmapConfig(Bitmap.Config config) {
+    bitmapConfig = config;
+  }
+
+  /**
+   * Sets the size that frames will be drawn at, cropping to fill it.
+   *
+   * Frames of GIFs that are at least twice as large as this are composited at a lower resolution,
+   * by sampling every n-th pixel of every n-th row, for the largest power of two n which doesn't
+   * make them any smaller than the target size. If this changes the size of the frames, decoding
+   * restarts from the first frame.
+   *
+   * @param targetWidth  The width frames are drawn at, or 0 to always composite at full size
+   * @param targetHeight The height frames are drawn at, or 0 to always composite at full size
+   * @return true if the size of the frames changed
+   */
+  public boolean setTargetSize(int targetWidth, int targetHeight) {
+    this.targetWidth = targetWidth;
+    this.targetHeight = targetHeight;
+
+    int previousWidth = sampledWidth;
+    int previousHeight = sampledHeight;
+    updateSampleSize();
+    if (sampledWidth == previousWidth && sampledHeight == previousHeight) {
+      return false;
+    }
+
+    // Composite from the first frame again, into new buffers of the new size. The previous bitmap
+    // may still be drawn by whoever it was handed to, so it's left to be garbage collected.
+    framePointer = -1;
+    lastFrameIndex = -1;
+    mainScratch = null;
+    copyScratch = null;
+    currentImage = null;
+    return true;
+  }
+
+  /**
+   * Returns true if no frame of the GIF has a transparent color, so every pixel drawn is opaque.
+   */
+  public boolean isOpaque() {
+    return image == null || image.isOpaque();
   }
 
   /**
@@ -251,40 +298,36 @@ public class GifDecoder {
    * @return Bitmap representation of frame
    */
   public Bitmap getNextFrame() {
-    if (frameCount <= 0 || framePointer < 0 || currentImage == null) {
+    if (frameCount <= 0 || framePointer < 0) {
       return null;
     }
+    if (mainScratch == null) {
+      createImages();
+    }
 
-    GifFrame frame = frames.get(framePointer);
+    GifImage.Frame frame = image.getFrame(framePointer);
 
     //Set the appropriate color table
-    if (frame.lct == null) {
-      act = gct;
-    } else {
-      act = frame.lct;
-      if (bgIndex == frame.transIndex) {
-        bgColor = 0;
-      }
-    }
-
-    int save = 0;
-    if (frame.transparency) {
-      save = act[frame.transIndex];
-      act[frame.transIndex] = 0; // set transparent color if specified
+    int[] colorTable = frame.lct;
+    if (colorTable == null) {
+      colorTable = image.getGlobalColorTable();
+    } else if (image.getBackgroundIndex() == frame.transIndex) {
+      bgColor = 0;
     }
-    if (act == null) {
+    if (colorTable == null) {
       Log.w(TAG, "No Valid Color Table");
       status = STATUS_FORMAT_ERROR; // no color table defined
       return null;
     }
 
-    setPixels(framePointer); // transfer pixel data to image
-
-    // Reset the transparent pixel in the color table
+    // The image's tables are shared, so the transparent color is only set in our copy
+    System.arraycopy(colorTable, 0, act, 0, act.length);
     if (frame.transparency) {
-      act[frame.transIndex] = save;
+      act[frame.transIndex] = 0; // set transparent color if specified
     }
 
+    setPixels(framePointer); // transfer pixel data to image
+
     return currentImage;
   }
 
@@ -295,7 +338,6 @@ public class GifDecoder {
    * @return read status code (0 = no errors)
    */
   public int read(InputStream is, int contentLength) {
-    long startTime = System.currentTimeMillis();
     if (is != null) {
       try {
         int capacity = (contentLength > 0) ? (contentLength + 4096) : 4096;
@@ -331,69 +373,148 @@ public class GifDecoder {
    * @return read status code (0 = no errors)
    */
   public int read(byte[] data) {
-    init();
-    if (data != null) {
-      //Initiliaze the raw data buffer
-      rawData = ByteBuffer.wrap(data);
-      rawData.rewind();
-      rawData.order(ByteOrder.LITTLE_ENDIAN);
-
-      readHeader();
-      if (!err()) {
-        readContents();
-        if (frameCount < 0) {
-          status = STATUS_FORMAT_ERROR;
-        }
+    return read(data != null ? ByteBuffer.wrap(data) : null);
+  }
+
+  /**
+   * Reads GIF image from a buffer. The buffer is read from its start, and is referenced (not copied)
+   * for as long as this decoder is in use, so that frames can be decoded from it on demand.
+   *
+   * @param data containing GIF file.
+   * @return read status code (0 = no errors)
+   */
+  public int read(ByteBuffer data) {
+    setImage(GifImage.read(data));
+    return status;
+  }
+
+  /**
+   * Starts decoding an image from its first frame.
+   */
+  protected void setImage(GifImage image) {
+    this.image = image;
+    status = image.getStatus();
+    width = image.getWidth();
+    height = image.getHeight();
+    frameCount = image.getFrameCount();
+    framePointer = -1;
+    lastFrameIndex = -1;
+
+    int[] gct = image.getGlobalColorTable();
+    int bgIndex = image.getBackgroundIndex();
+    bgColor = gct != null ? gct[bgIndex] : 0;
+
+    rawData = frameCount > 0 ? image.getData() : null;
+    updateSampleSize();
+  }
+
+  /**
+   * Subsample while the frames would still be at least as large as the size they are drawn at.
+   */
+  protected void updateSampleSize() {
+    sampleSize = 1;
+    if (targetWidth > 0 && targetHeight > 0) {
+      while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+        sampleSize *= 2;
       }
-    } else {
-      status = STATUS_OPEN_ERROR;
     }
+    sampledWidth = sampleCeil(width);
+    sampledHeight = sampleCeil(height);
+  }
 
-    return status;
+  /**
+   * Gets the config frames are composited into.
+   */
+  protected Bitmap.Config getConfig() {
+    Bitmap.Config config = bitmapConfig;
+    if (config == null) {
+      // RGB_565 halves the memory, but it can't represent transparent pixels.
+      config = isOpaque() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+    return config;
+  }
+
+  /**
+   * Creates the scratch arrays and bitmap frames are composited into, before the first frame.
+   */
+  protected void createImages() {
+    mainPixels = new byte[width * height];
+    mainScratch = new int[sampledWidth * sampledHeight];
+    currentImage = Bitmap.createBitmap(sampledWidth, sampledHeight, getConfig());
   }
 
   /**
    * Creates new frame image from current data (and previous frames as specified by their disposition codes).
+   *
+   * Only the area covered by the previous frame's disposal and by this frame is touched, both in the
+   * scratch canvas and in the bitmap.
    */
   protected void setPixels(int frameIndex) {
-    GifFrame currentFrame = frames.get(frameIndex);
-    GifFrame previousFrame = null;
-    int previousIndex = frameIndex - 1;
-    if (previousIndex >= 0) {
-      previousFrame = frames.get(previousIndex);
+    GifImage.Frame currentFrame = image.getFrame(frameIndex);
+    GifImage.Frame previousFrame = null;
+    if (lastFrameIndex >= 0) {
+      previousFrame = image.getFrame(lastFrameIndex);
     }
 
-    // final location of blended pixels
+    // final location of blended pixels, always mirrors the contents of currentImage
     final int[] dest = mainScratch;
 
+    // area of the canvas which has changed, and needs to be copied to the bitmap
+    int dirtyLeft = sampledWidth;
+    int dirtyTop = sampledHeight;
+    int dirtyRight = 0;
+    int dirtyBottom = 0;
+
     // fill in starting image contents based on last image's dispose code
-    if (previousFrame != null && previousFrame.dispose > DISPOSAL_UNSPECIFIED) {
-      if (previousFrame.dispose == DISPOSAL_NONE && currentImage != null) {
-        // Start with the current image
-        currentImage.getPixels(dest, 0, width, 0, 0, width, height);
-      }
-      if (previousFrame.dispose == DISPOSAL_BACKGROUND) {
-        // Start with a canvas filled with the background color
+    if (previousFrame != null && previousFrame.dispose > GifImage.DISPOSAL_NONE) {
+      int left = Math.min(sampleCeil(previousFrame.ix), sampledWidth);
+      int top = Math.min(sampleCeil(previousFrame.iy), sampledHeight);
+      int right = Math.min(sampleCeil(previousFrame.ix + previousFrame.iw), sampledWidth);
+      int bottom = Math.min(sampleCeil(previousFrame.iy + previousFrame.ih), sampledHeight);
+
+      if (previousFrame.dispose == GifImage.DISPOSAL_BACKGROUND) {
+        // Fill the last frame's area with the background color
         int c = 0;
         if (!currentFrame.transparency) {
           c = bgColor;
         }
-        for (int i = 0; i < previousFrame.ih; i++) {
-          int n1 = (previousFrame.iy + i) * width + previousFrame.ix;
-          int n2 = n1 + previousFrame.iw;
-          for (int k = n1; k < n2; k++) {
-            dest[k] = c;
-          }
+        for (int line = top; line < bottom; line++) {
+          int n1 = line * sampledWidth + left;
+          Arrays.fill(dest, n1, n1 + (right - left), c);
         }
       }
-      if (previousFrame.dispose == DISPOSAL_PREVIOUS && previousImage != null) {
-        // Start with the previous frame
-        previousImage.getPixels(dest, 0, width, 0, 0, width, height);
+      if (previousFrame.dispose == GifImage.DISPOSAL_PREVIOUS && copyScratch != null) {
+        // Restore the last frame's area to what it was before the last frame was drawn
+        int rowWidth = right - left;
+        for (int line = top; line < bottom; line++) {
+          System.arraycopy(copyScratch, (line - top) * rowWidth, dest, line * sampledWidth + left, rowWidth);
+        }
+      }
+
+      dirtyLeft = left;
+      dirtyTop = top;
+      dirtyRight = right;
+      dirtyBottom = bottom;
+    }
+
+    int frameLeft = Math.min(sampleCeil(currentFrame.ix), sampledWidth);
+    int frameTop = Math.min(sampleCeil(currentFrame.iy), sampledHeight);
+    int frameRight = Math.min(sampleCeil(currentFrame.ix + currentFrame.iw), sampledWidth);
+    int frameBottom = Math.min(sampleCeil(currentFrame.iy + currentFrame.ih), sampledHeight);
+
+    if (currentFrame.dispose == GifImage.DISPOSAL_PREVIOUS) {
+      // Save the area this frame covers, so it can be restored before the next frame
+      int rowWidth = frameRight - frameLeft;
+      if (copyScratch == null) {
+        copyScratch = new int[sampledWidth * sampledHeight];
+      }
+      for (int line = frameTop; line < frameBottom; line++) {
+        System.arraycopy(dest, line * sampledWidth + frameLeft, copyScratch, (line - frameTop) * rowWidth, rowWidth);
       }
     }
 
     //Decode pixels for this frame  into the global pixels[] scratch
-    decodeBitmapData(currentFrame, mainPixels); // decode pixel data
+    decodeBitmapData(currentFrame); // decode pixel data
 
     // copy each source line to the appropriate place in the destination
     int pass = 1;
@@ -424,17 +545,16 @@ public class GifDecoder {
         iline += inc;
       }
       line += currentFrame.iy;
-      if (line < height) {
-        int k = line * width;
-        int dx = k + currentFrame.ix; // start of line in dest
-        int dlim = dx + currentFrame.iw; // end of dest line
-        if ((k + width) < dlim) {
-          dlim = k + width; // past dest edge
-        }
-        int sx = i * currentFrame.iw; // start of line in source
+      // when subsampling, only every sampleSize-th row and column of the GIF is kept
+      if (line < height && line % sampleSize == 0) {
+        int k = (line / sampleSize) * sampledWidth;
+        int dx = k + frameLeft; // start of line in dest
+        int dlim = k + frameRight; // end of dest line, clipped to the dest edge
+        int sx = i * currentFrame.iw + frameLeft * sampleSize - currentFrame.ix; // start of line in source
         while (dx < dlim) {
           // map color and insert in destination
-          int index = ((int) mainPixels[sx++]) & 0xff;
+          int index = ((int) mainPixels[sx]) & 0xff;
+          sx += sampleSize;
           int c = act[index];
           if (c != 0) {
             dest[dx] = c;
@@ -444,147 +564,217 @@ public class GifDecoder {
       }
     }
 
-    //Copy pixels into previous image
-    currentImage.getPixels(copyScratch, 0, width, 0, 0, width, height);
-    previousImage.setPixels(copyScratch, 0, width, 0, 0, width, height);
-    //Set pixels for current image
-    currentImage.setPixels(dest, 0, width, 0, 0, width, height);
+    if (frameRight > frameLeft && frameBottom > frameTop) {
+      dirtyLeft = Math.min(dirtyLeft, frameLeft);
+      dirtyTop = Math.min(dirtyTop, frameTop);
+      dirtyRight = Math.max(dirtyRight, frameRight);
+      dirtyBottom = Math.max(dirtyBottom, frameBottom);
+    }
+
+    //Set pixels for the changed area of the current image
+    if (dirtyRight > dirtyLeft && dirtyBottom > dirtyTop) {
+      updateImage(dirtyLeft, dirtyTop, dirtyRight, dirtyBottom);
+    }
+
+    lastFrameIndex = frameIndex;
   }
 
   /**
-   * Decodes LZW image data into pixel array. Adapted from John Cristy's BitmapMagick.
+   * Copies an area of the scratch canvas to the current image. Nothing outside of the areas copied
+   * here is ever changed in the image.
    */
-  protected void decodeBitmapData(GifFrame frame, byte[] dstPixels) {
-    long startTime = System.currentTimeMillis();
-    long stepOne, stepTwo, stepThree;
-    if (frame != null) {
-      //Jump to the frame start position
-      rawData.position(frame.bufferFrameStart);
-    }
+  protected void updateImage(int left, int top, int right, int bottom) {
+    currentImage.setPixels(mainScratch, top * sampledWidth + left, sampledWidth,
+      left, top, right - left, bottom - top);
+  }
+
+  /**
+   * Converts a GIF coordinate to the first sampled coordinate at or after it.
+   */
+  private int sampleCeil(int coordinate) {
+    return (coordinate + sampleSize - 1) / sampleSize;
+  }
 
-    int nullCode = -1;
-    int npix = (frame == null) ? width * height : frame.iw * frame.ih;
-    int available, clear, code_mask, code_size, end_of_information, in_code, old_code, bits, code, count, i, datum, data_size, first, top, bi, pi;
+  /**
+   * Decodes a frame's LZW image data into {@link #mainPixels}.
+   *
+   * The frame's data sub-blocks are first gathered into one array with bulk reads, and codes are
+   * then pulled out of a 64-bit bit buffer. Each code's string is written straight into the output,
+   * back to front along its prefix chain, rather than being pushed through a stack one pixel at a
+   * time. Originally adapted from John Cristy's BitmapMagick.
+   */
+  protected void decodeBitmapData(GifImage.Frame frame) {
+    //Jump to the frame start position
+    rawData.position(frame.bufferFrameStart);
 
-    if (dstPixels == null || dstPixels.length < npix) {
-      dstPixels = new byte[npix]; // allocate new pixel array
+    int npix = frame.iw * frame.ih;
+    if (mainPixels == null || mainPixels.length < npix) {
+      mainPixels = new byte[npix]; // frame is larger than the logical screen
     }
+    final byte[] dstPixels = mainPixels;
+
     if (prefix == null) {
       prefix = new short[MAX_STACK_SIZE];
     }
     if (suffix == null) {
       suffix = new byte[MAX_STACK_SIZE];
     }
-    if (pixelStack == null) {
-      pixelStack = new byte[MAX_STACK_SIZE + 1];
-    }
-
-    // Initialize GIF data stream decoder.
-    data_size = read();
-    clear = 1 << data_size;
-    end_of_information = clear + 1;
-    available = clear + 2;
-    old_code = nullCode;
-    code_size = data_size + 1;
-    code_mask = (1 << code_size) - 1;
-    for (code = 0; code < clear; code++) {
-      prefix[code] = 0; // XXX ArrayIndexOutOfBoundsException
-      suffix[code] = (byte) code;
-    }
+    if (lengths == null) {
+      lengths = new short[MAX_STACK_SIZE];
+    }
+    final short[] prefix = this.prefix;
+    final byte[] suffix = this.suffix;
+    final short[] lengths = this.lengths;
+
+    int dataSize = read();
+    int dataLength = readImageData();
+
+    int pi = 0;
+    if (dataSize >= 1 && dataSize <= 11) {
+      final byte[] data = lzwData;
+
+      // Initialize GIF data stream decoder.
+      int clear = 1 << dataSize;
+      int endOfInformation = clear + 1;
+      int available = clear + 2;
+      int codeSize = dataSize + 1;
+      int codeMask = (1 << codeSize) - 1;
+      int oldCode = -1;
+      int first = 0;
+      for (int code = 0; code < clear; code++) {
+        prefix[code] = 0;
+        suffix[code] = (byte) code;
+        lengths[code] = 1;
+      }
 
-    // Decode GIF pixel stream.
-    datum = bits = count = first = top = pi = bi = 0;
-    for (i = 0; i < npix; ) {
-      if (top == 0) {
-        if (bits < code_size) {
-          // Load bytes until there are enough bits for a code.
-          if (count == 0) {
-            // Read a new data block.
-            count = readBlock();
-            if (count <= 0) {
-              break;
-            }
-            bi = 0;
+      long datum = 0;
+      int bits = 0;
+      int di = 0;
+
+      // Decode GIF pixel stream.
+      while (pi < npix) {
+        if (bits < codeSize) {
+          // Load as many whole bytes as fit into the bit buffer.
+          while (bits <= 56 && di < dataLength) {
+            datum |= (long) (data[di++] & 0xff) << bits;
+            bits += 8;
+          }
+          if (bits < codeSize) {
+            break; // out of data
           }
-          datum += (((int) block[bi]) & 0xff) << bits;
-          bits += 8;
-          bi++;
-          count--;
-          continue;
         }
+
         // Get the next code.
-        code = datum & code_mask;
-        datum >>= code_size;
-        bits -= code_size;
+        int code = (int) datum & codeMask;
+        datum >>>= codeSize;
+        bits -= codeSize;
+
         // Interpret the code
-        if ((code > available) || (code == end_of_information)) {
-          break;
-        }
         if (code == clear) {
           // Reset decoder.
-          code_size = data_size + 1;
-          code_mask = (1 << code_size) - 1;
+          codeSize = dataSize + 1;
+          codeMask = (1 << codeSize) - 1;
           available = clear + 2;
-          old_code = nullCode;
+          oldCode = -1;
           continue;
         }
-        if (old_code == nullCode) {
-          pixelStack[top++] = suffix[code];
-          old_code = code;
+        if (code > available || code == endOfInformation) {
+          break;
+        }
+        if (oldCode == -1) {
+          if (code >= clear) {
+            break; // the first code after a clear must be a color
+          }
           first = code;
+          dstPixels[pi++] = (byte) code;
+          oldCode = code;
           continue;
         }
-        in_code = code;
-        if (code == available) {
-          pixelStack[top++] = (byte) first;
-          code = old_code;
+
+        // The string for code == available isn't in the table yet: it's the previous one, plus its
+        // own first pixel.
+        int stringCode = code == available ? oldCode : code;
+        int length = lengths[stringCode];
+        int end = pi + length;
+
+        // Write the string back to front, dropping any pixels past the end of the frame.
+        int c = stringCode;
+        int pj = end - 1;
+        while (pj >= npix) {
+          c = prefix[c];
+          pj--;
         }
-        while (code > clear) {
-          pixelStack[top++] = suffix[code];
-          code = prefix[code];
+        while (pj >= pi) {
+          dstPixels[pj--] = suffix[c];
+          c = prefix[c];
         }
-        first = ((int) suffix[code]) & 0xff;
-        // Add a new string to the string table,
-        if (available >= MAX_STACK_SIZE) {
-          break;
+
+        if (code == available) {
+          if (end < npix) {
+            dstPixels[end] = (byte) first;
+          }
+          end++;
+        } else {
+          first = dstPixels[pi] & 0xff;
         }
-        pixelStack[top++] = (byte) first;
-        prefix[available] = (short) old_code;
-        suffix[available] = (byte) first;
-        available++;
-        if (((available & code_mask) == 0) && (available < MAX_STACK_SIZE)) {
-          code_size++;
-          code_mask += available;
+        pi = Math.min(end, npix);
+
+        // Add a new string to the string table, unless it is full and waiting for a clear code.
+        if (available < MAX_STACK_SIZE) {
+          prefix[available] = (short) oldCode;
+          suffix[available] = (byte) first;
+          lengths[available] = (short) (lengths[oldCode] + 1);
+          available++;
+          if (((available & codeMask) == 0) && (available < MAX_STACK_SIZE)) {
+            codeSize++;
+            // Not codeMask + available: with a minimum code size of 1, the first step is at 8, not 4.
+            codeMask = (1 << codeSize) - 1;
+          }
         }
-        old_code = in_code;
+        oldCode = code;
       }
-      // Pop a pixel off the pixel stack.
-      top--;
-      dstPixels[pi++] = pixelStack[top];
-      i++;
     }
 
-    for (i = pi; i < npix; i++) {
-      dstPixels[i] = 0; // clear missing pixels
+    if (pi < npix) {
+      Arrays.fill(dstPixels, pi, npix, (byte) 0); // clear missing pixels
     }
   }
 
   /**
-   * Returns true if an error was encountered during reading/decoding
+   * Gathers the data sub-blocks of the current image into {@link #lzwData}.
+   *
+   * @return the number of bytes of data
    */
-  protected boolean err() {
-    return status != STATUS_OK;
+  protected int readImageData() {
+    int length = 0;
+    do {
+      blockSize = read();
+      if (blockSize > 0) {
+        if (lzwData == null || lzwData.length < length + blockSize) {
+          byte[] grown = new byte[Math.max(length + blockSize, (lzwData != null ? lzwData.length : 0) * 2)];
+          if (lzwData != null) {
+            System.arraycopy(lzwData, 0, grown, 0, length);
+          }
+          lzwData = grown;
+        }
+        try {
+          rawData.get(lzwData, length, blockSize);
+        } catch (Exception e) {
+          Log.w(TAG, "Error Reading Block", e);
+          status = STATUS_FORMAT_ERROR;
+          break;
+        }
+        length += blockSize;
+      }
+    } while (blockSize > 0);
+    return length;
   }
 
   /**
-   * Initializes or re-initializes reader
+   * Returns true if an error was encountered during reading/decoding
    */
-  protected void init() {
-    status = STATUS_OK;
-    frameCount = 0;
-    framePointer = -1;
-    frames = new ArrayList<GifFrame>();
-    gct = null;
+  protected boolean err() {
+    return status != STATUS_OK;
   }
 
   /**
@@ -599,238 +789,4 @@ public class GifDecoder {
     }
     return curByte;
   }
-
-  /**
-   * Reads next variable length block from input.
-   *
-   * @return number of bytes stored in "buffer"
-   */
-  protected int readBlock() {
-    blockSize = read();
-    int n = 0;
-    if (blockSize > 0) {
-      try {
-        int count;
-        while (n < blockSize) {
-          count = blockSize - n;
-          rawData.get(block, n, count);
-
-          n += count;
-        }
-      } catch (Exception e) {
-        Log.w(TAG, "Error Reading Block", e);
-        status = STATUS_FORMAT_ERROR;
-      }
-    }
-    return n;
-  }
-
-  /**
-   * Reads color table as 256 RGB integer values
-   *
-   * @param ncolors int number of colors to read
-   * @return int array containing 256 colors (packed ARGB with full alpha)
-   */
-  protected int[] readColorTable(int ncolors) {
-    int nbytes = 3 * ncolors;
-    int[] tab = null;
-    byte[] c = new byte[nbytes];
-
-    try {
-      rawData.get(c);
-
-      tab = new int[256]; // max size to avoid bounds checks
-      int i = 0;
-      int j = 0;
-      while (i < ncolors) {
-        int r = ((int) c[j++]) & 0xff;
-        int g = ((int) c[j++]) & 0xff;
-        int b = ((int) c[j++]) & 0xff;
-        tab[i++] = 0xff000000 | (r << 16) | (g << 8) | b;
-      }
-    } catch (BufferUnderflowException e) {
-      Log.w(TAG, "Format Error Reading Color Table", e);
-      status = STATUS_FORMAT_ERROR;
-    }
-
-    return tab;
-  }
-
-  /**
-   * Main file parser. Reads GIF content blocks.
-   */
-  protected void readContents() {
-    // read GIF file content blocks
-    boolean done = false;
-    while (!(done || err())) {
-      int code = read();
-      switch (code) {
-        case 0x2C: // image separator
-          readBitmap();
-          break;
-        case 0x21: // extension
-          code = read();
-          switch (code) {
-            case 0xf9: // graphics control extension
-              //Start a new frame
-              currentFrame = new GifFrame();
-              readGraphicControlExt();
-              break;
-            case 0xff: // application extension
-              readBlock();
-              String app = "";
-              for (int i = 0; i < 11; i++) {
-                app += (char) block[i];
-              }
-              if (app.equals("NETSCAPE2.0")) {
-                readNetscapeExt();
-              } else {
-                skip(); // don't care
-              }
-              break;
-            case 0xfe:// comment extension
-              skip();
-              break;
-            case 0x01:// plain text extension
-              skip();
-              break;
-            default: // uninteresting extension
-              skip();
-          }
-          break;
-        case 0x3b: // terminator
-          done = true;
-          break;
-        case 0x00: // bad byte, but keep going and see what happens break;
-        default:
-          status = STATUS_FORMAT_ERROR;
-      }
-    }
-  }
-
-  /**
-   * Reads GIF file header information.
-   */
-  protected void readHeader() {
-    String id = "";
-    for (int i = 0; i < 6; i++) {
-      id += (char) read();
-    }
-    if (!id.startsWith("GIF")) {
-      status = STATUS_FORMAT_ERROR;
-      return;
-    }
-    readLSD();
-    if (gctFlag && !err()) {
-      gct = readColorTable(gctSize);
-      bgColor = gct[bgIndex];
-    }
-  }
-
-  /**
-   * Reads Graphics Control Extension values
-   */
-  protected void readGraphicControlExt() {
-    read(); // block size
-    int packed = read(); // packed fields
-    currentFrame.dispose = (packed & 0x1c) >> 2; // disposal method
-    if (currentFrame.dispose == 0) {
-      currentFrame.dispose = 1; // elect to keep old image if discretionary
-    }
-    currentFrame.transparency = (packed & 1) != 0;
-    currentFrame.delay = readShort() * 10; // delay in milliseconds
-    currentFrame.transIndex = read(); // transparent color index
-    read(); // block terminator
-  }
-
-  /**
-   * Reads next frame image
-   */
-  protected void readBitmap() {
-    currentFrame.ix = readShort(); // (sub)image position & size
-    currentFrame.iy = readShort();
-    currentFrame.iw = readShort();
-    currentFrame.ih = readShort();
-
-    int packed = read();
-    lctFlag = (packed & 0x80) != 0; // 1 - local color table flag interlace
-    lctSize = (int) Math.pow(2, (packed & 0x07) + 1);
-    // 3 - sort flag
-    // 4-5 - reserved lctSize = 2 << (packed & 7); // 6-8 - local color
-    // table size
-    currentFrame.interlace = (packed & 0x40) != 0;
-    if (lctFlag) {
-      currentFrame.lct = readColorTable(lctSize); // read table
-    } else {
-      currentFrame.lct = null; //No local color table
-    }
-
-    currentFrame.bufferFrameStart = rawData.position(); //Save this as the decoding position pointer
-
-    decodeBitmapData(null, mainPixels); // false decode pixel data to advance buffer
-    skip();
-    if (err()) {
-      return;
-    }
-
-    frameCount++;
-    frames.add(currentFrame); // add image to frame
-  }
-
-  /**
-   * Reads Logical Screen Descriptor
-   */
-  protected void readLSD() {
-    // logical screen size
-    width = readShort();
-    height = readShort();
-    // packed fields
-    int packed = read();
-    gctFlag = (packed & 0x80) != 0; // 1 : global color table flag
-    // 2-4 : color resolution
-    // 5 : gct sort flag
-    gctSize = 2 << (packed & 7); // 6-8 : gct size
-    bgIndex = read(); // background color index
-    pixelAspect = read(); // pixel aspect ratio
-
-    //Now that we know the size, init scratch arrays
-    mainPixels = new byte[width * height];
-    mainScratch = new int[width * height];
-    copyScratch = new int[width * height];
-
-    previousImage = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-    currentImage = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-  }
-
-  /**
-   * Reads Netscape extenstion to obtain iteration count
-   */
-  protected void readNetscapeExt() {
-    do {
-      readBlock();
-      if (block[0] == 1) {
-        // loop count sub-block
-        int b1 = ((int) block[1]) & 0xff;
-        int b2 = ((int) block[2]) & 0xff;
-        loopCount = (b2 << 8) | b1;
-      }
-    } while ((blockSize > 0) && !err());
-  }
-
-  /**
-   * Reads next 16-bit value, LSB first
-   */
-  protected int readShort() {
-    // read 16-bit value
-    return rawData.getShort();
-  }
-
-  /**
-   * Skips variable length blocks up to and including next zero length block.
-   */
-  protected void skip() {
-    do {
-      readBlock();
-    } while ((blockSize > 0) && !err());
-  }
 }
@@ -0,0 +1,548 @@
+/**
+ * Copyright (c) 2013 Xcellent Creations, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.facebook.notifications.internal.utilities;
+
+import android.util.Log;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parsed structure of a GIF image: its logical screen, color tables, and an index of where each
+ * frame's compressed data starts.
+ *
+ * A GifImage is never modified once it has been read, so it can be shared between threads, and used
+ * to drive any number of {@link GifDecoder}s at once. Frame data is referenced from the buffer the
+ * image was read from, and only decompressed by the decoders.
+ */
+@SuppressWarnings("ALL")
+public final class GifImage {
+  private static final String TAG = GifImage.class.getSimpleName();
+
+  /**
+   * GIF Disposal Method meaning take no action
+   */
+  static final int DISPOSAL_UNSPECIFIED = 0;
+  /**
+   * GIF Disposal Method meaning leave canvas from previous frame
+   */
+  static final int DISPOSAL_NONE = 1;
+  /**
+   * GIF Disposal Method meaning clear canvas to background color
+   */
+  static final int DISPOSAL_BACKGROUND = 2;
+  /**
+   * GIF Disposal Method meaning clear canvas to frame before last
+   */
+  static final int DISPOSAL_PREVIOUS = 3;
+
+  /**
+   * The largest logical screen, or frame, that will be read, in pixels. GIF dimensions are 16-bit, so
+   * without a limit a few header bytes could ask for gigabytes of scratch arrays.
+   */
+  static final int MAX_PIXEL_COUNT = 2048 * 2048;
+  /**
+   * The most frames that will be read from a single image.
+   */
+  static final int MAX_FRAME_COUNT = 1024;
+  /**
+   * The most pixels that will be decoded over all frames of one loop of the animation, which bounds
+   * the decoding cost of every loop. Frames past this budget are dropped.
+   */
+  static final long MAX_LOOP_PIXEL_COUNT = 128L * 1024 * 1024;
+
+  /**
+   * Inner model class housing metadata for each frame. Frames are only written while parsing.
+   */
+  static class Frame {
+    int ix, iy, iw, ih;
+    /* Control Flags */
+    boolean interlace;
+    boolean transparency;
+    /* Disposal Method */
+    int dispose;
+    /* Transparency Index */
+    int transIndex;
+    /* Delay, in ms, to next frame */
+    int delay;
+    /* Index in the raw buffer where we need to start reading to decode */
+    int bufferFrameStart;
+    /* Local Color Table */
+    int[] lct;
+  }
+
+  /**
+   * Reads the structure of a GIF image from a buffer, without decompressing any frames.
+   */
+  private static class Parser {
+    int status = GifDecoder.STATUS_OK;
+    ByteBuffer rawData;
+
+    int width; // full image width
+    int height; // full image height
+    boolean gctFlag; // global color table used
+    int gctSize; // size of global color table
+    int loopCount = 1; // iterations; 0 = repeat forever
+    int[] gct; // global color table
+    int bgIndex; // background color index
+    int pixelAspect; // pixel aspect ratio
+    boolean lctFlag; // local color table flag
+    int lctSize; // local color table size
+
+    byte[] block = new byte[256]; // current data block
+    int blockSize = 0; // block size last graphic control extension info
+
+    List<Frame> frames = new ArrayList<Frame>(); // frames read from current file
+    Frame currentFrame;
+    long loopPixelCount; // pixels decoded by one loop over the frames read so far
+
+    Parser(ByteBuffer rawData) {
+      this.rawData = rawData;
+    }
+
+    boolean err() {
+      return status != GifDecoder.STATUS_OK;
+    }
+
+    /**
+     * Reads a single byte from the input stream.
+     */
+    int read() {
+      int curByte = 0;
+      try {
+        curByte = (rawData.get() & 0xFF);
+      } catch (Exception e) {
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+      }
+      return curByte;
+    }
+
+    /**
+     * Reads next variable length block from input.
+     *
+     * @return number of bytes stored in "buffer"
+     */
+    int readBlock() {
+      blockSize = read();
+      int n = 0;
+      if (blockSize > 0) {
+        try {
+          int count;
+          while (n < blockSize) {
+            count = blockSize - n;
+            rawData.get(block, n, count);
+
+            n += count;
+          }
+        } catch (Exception e) {
+          Log.w(TAG, "Error Reading Block", e);
+          status = GifDecoder.STATUS_FORMAT_ERROR;
+        }
+      }
+      return n;
+    }
+
+    /**
+     * Reads color table as 256 RGB integer values
+     *
+     * @param ncolors int number of colors to read
+     * @return int array containing 256 colors (packed ARGB with full alpha)
+     */
+    int[] readColorTable(int ncolors) {
+      int nbytes = 3 * ncolors;
+      int[] tab = null;
+      byte[] c = new byte[nbytes];
+
+      try {
+        rawData.get(c);
+
+        tab = new int[256]; // max size to avoid bounds checks
+        int i = 0;
+        int j = 0;
+        while (i < ncolors) {
+          int r = ((int) c[j++]) & 0xff;
+          int g = ((int) c[j++]) & 0xff;
+          int b = ((int) c[j++]) & 0xff;
+          tab[i++] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+      } catch (BufferUnderflowException e) {
+        Log.w(TAG, "Format Error Reading Color Table", e);
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+      }
+
+      return tab;
+    }
+
+    /**
+     * Main file parser. Reads GIF content blocks.
+     */
+    void readContents() {
+      // read GIF file content blocks
+      boolean done = false;
+      while (!(done || err())) {
+        int code = read();
+        switch (code) {
+          case 0x2C: // image separator
+            readBitmap();
+            break;
+          case 0x21: // extension
+            code = read();
+            switch (code) {
+              case 0xf9: // graphics control extension
+                //Start a new frame
+                currentFrame = new Frame();
+                readGraphicControlExt();
+                break;
+              case 0xff: // application extension
+                readBlock();
+                String app = "";
+                for (int i = 0; i < 11; i++) {
+                  app += (char) block[i];
+                }
+                if (app.equals("NETSCAPE2.0")) {
+                  readNetscapeExt();
+                } else {
+                  skip(); // don't care
+                }
+                break;
+              case 0xfe:// comment extension
+                skip();
+                break;
+              case 0x01:// plain text extension
+                skip();
+                break;
+              default: // uninteresting extension
+                skip();
+            }
+            break;
+          case 0x3b: // terminator
+            done = true;
+            break;
+          case 0x00: // bad byte, but keep going and see what happens break;
+          default:
+            status = GifDecoder.STATUS_FORMAT_ERROR;
+        }
+      }
+    }
+
+    /**
+     * Reads GIF file header information.
+     */
+    void readHeader() {
+      String id = "";
+      for (int i = 0; i < 6; i++) {
+        id += (char) read();
+      }
+      if (!id.startsWith("GIF")) {
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+        return;
+      }
+      readLSD();
+      if (gctFlag && !err()) {
+        gct = readColorTable(gctSize);
+      }
+    }
+
+    /**
+     * Reads Graphics Control Extension values
+     */
+    void readGraphicControlExt() {
+      read(); // block size
+      int packed = read(); // packed fields
+      currentFrame.dispose = (packed & 0x1c) >> 2; // disposal method
+      if (currentFrame.dispose == 0) {
+        currentFrame.dispose = 1; // elect to keep old image if discretionary
+      }
+      currentFrame.transparency = (packed & 1) != 0;
+      currentFrame.delay = readShort() * 10; // delay in milliseconds
+      currentFrame.transIndex = read(); // transparent color index
+      read(); // block terminator
+    }
+
+    /**
+     * Reads next frame image
+     */
+    void readBitmap() {
+      if (currentFrame == null) {
+        // No graphic control extension preceded this image, so it uses the defaults
+        currentFrame = new Frame();
+        currentFrame.dispose = DISPOSAL_NONE;
+      }
+      currentFrame.ix = readShort(); // (sub)image position & size
+      currentFrame.iy = readShort();
+      currentFrame.iw = readShort();
+      currentFrame.ih = readShort();
+
+      int packed = read();
+      lctFlag = (packed & 0x80) != 0; // 1 - local color table flag interlace
+      lctSize = (int) Math.pow(2, (packed & 0x07) + 1);
+      // 3 - sort flag
+      // 4-5 - reserved lctSize = 2 << (packed & 7); // 6-8 - local color
+      // table size
+      currentFrame.interlace = (packed & 0x40) != 0;
+      if (lctFlag) {
+        currentFrame.lct = readColorTable(lctSize); // read table
+      } else {
+        currentFrame.lct = null; //No local color table
+      }
+
+      currentFrame.bufferFrameStart = rawData.position(); //Save this as the decoding position pointer
+
+      // Only index the frame here, its LZW data is decoded on demand by GifDecoder
+      read(); // LZW minimum code size
+      skip(); // image data sub-blocks
+      if (err()) {
+        return;
+      }
+
+      long pixelCount = (long) currentFrame.iw * currentFrame.ih;
+      if (pixelCount > MAX_PIXEL_COUNT) {
+        Log.w(TAG, "Frame is too large: " + currentFrame.iw + "x" + currentFrame.ih);
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+        return;
+      }
+      if (frames.size() >= MAX_FRAME_COUNT || loopPixelCount + pixelCount > MAX_LOOP_PIXEL_COUNT) {
+        // Keep the frames read so far, but don't let a huge animation stall the decoder.
+        Log.w(TAG, "Too many frames, only the first " + frames.size() + " will be shown");
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+        return;
+      }
+      loopPixelCount += pixelCount;
+
+      frames.add(currentFrame); // add image to frame
+      currentFrame = null;
+    }
+
+    /**
+     * Reads Logical Screen Descriptor
+     */
+    void readLSD() {
+      // logical screen size
+      width = readShort();
+      height = readShort();
+      // packed fields
+      int packed = read();
+      gctFlag = (packed & 0x80) != 0; // 1 : global color table flag
+      // 2-4 : color resolution
+      // 5 : gct sort flag
+      gctSize = 2 << (packed & 7); // 6-8 : gct size
+      bgIndex = read(); // background color index
+      pixelAspect = read(); // pixel aspect ratio
+
+      if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXEL_COUNT) {
+        Log.w(TAG, "Invalid logical screen size: " + width + "x" + height);
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+      }
+    }
+
+    /**
+     * Reads Netscape extenstion to obtain iteration count
+     */
+    void readNetscapeExt() {
+      do {
+        readBlock();
+        if (block[0] == 1) {
+          // loop count sub-block
+          int b1 = ((int) block[1]) & 0xff;
+          int b2 = ((int) block[2]) & 0xff;
+          loopCount = (b2 << 8) | b1;
+        }
+      } while ((blockSize > 0) && !err());
+    }
+
+    /**
+     * Reads next 16-bit value, LSB first
+     */
+    int readShort() {
+      // read 16-bit value
+      try {
+        return rawData.getShort() & 0xffff;
+      } catch (BufferUnderflowException e) {
+        status = GifDecoder.STATUS_FORMAT_ERROR;
+        return 0;
+      }
+    }
+
+    /**
+     * Skips variable length blocks up to and including next zero length block.
+     * Only the block lengths are read, the block contents are stepped over.
+     */
+    void skip() {
+      do {
+        blockSize = read();
+        if (blockSize > 0) {
+          int nextBlock = rawData.position() + blockSize;
+          if (nextBlock > rawData.limit()) {
+            status = GifDecoder.STATUS_FORMAT_ERROR;
+            return;
+          }
+          rawData.position(nextBlock);
+        }
+      } while ((blockSize > 0) && !err());
+    }
+  }
+
+  private final int status;
+  private final ByteBuffer rawData;
+  private final int width;
+  private final int height;
+  private final int loopCount;
+  private final int[] gct;
+  private final int bgIndex;
+  private final List<Frame> frames;
+
+  private GifImage(Parser parser) {
+    status = parser.status;
+    rawData = parser.rawData;
+    width = parser.width;
+    height = parser.height;
+    loopCount = parser.loopCount;
+    gct = parser.gct;
+    bgIndex = parser.bgIndex;
+    frames = Collections.unmodifiableList(parser.frames);
+  }
+
+  /**
+   * Reads GIF image from a buffer. The buffer is read from its start, and is referenced (not copied)
+   * for as long as this image is in use, so that frames can be decoded from it on demand.
+   *
+   * @param data containing GIF file.
+   * @return the image, which may be partially read if its status is not {@link GifDecoder#STATUS_OK}
+   */
+  public static GifImage read(ByteBuffer data) {
+    Parser parser;
+    if (data != null) {
+      //Initiliaze the raw data buffer, without touching the position or byte order of the caller's
+      ByteBuffer rawData = data.asReadOnlyBuffer();
+      rawData.rewind();
+      rawData.order(ByteOrder.LITTLE_ENDIAN);
+
+      parser = new Parser(rawData);
+      parser.readHeader();
+      if (!parser.err()) {
+        parser.readContents();
+      }
+    } else {
+      parser = new Parser(null);
+      parser.status = GifDecoder.STATUS_OPEN_ERROR;
+    }
+
+    return new GifImage(parser);
+  }
+
+  /**
+   * Gets the read status code of this image (0 = no errors)
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the number of frames read from file.
+   */
+  public int getFrameCount() {
+    return frames.size();
+  }
+
+  /**
+   * Gets the "Netscape" iteration count, if any. A count of 0 means repeat indefinitiely.
+   *
+   * @return iteration count if one was specified, else 1.
+   */
+  public int getLoopCount() {
+    return loopCount;
+  }
+
+  /**
+   * Gets display duration for specified frame.
+   *
+   * @param n int index of frame
+   * @return delay in milliseconds
+   */
+  public int getDelay(int n) {
+    int delay = -1;
+    if ((n >= 0) && (n < frames.size())) {
+      delay = frames.get(n).delay;
+    }
+    return delay;
+  }
+
+  /**
+   * Returns true if no frame of the GIF has a transparent color, so every pixel drawn is opaque.
+   */
+  public boolean isOpaque() {
+    for (Frame frame : frames) {
+      if (frame.transparency) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the approximate amount of heap memory held by this image. A memory-mapped buffer is not
+   * counted.
+   */
+  public int getByteCount() {
+    // Color tables are always allocated at their maximum size of 256 colors.
+    int byteCount = gct != null ? 256 * 4 : 0;
+    for (Frame frame : frames) {
+      byteCount += 64 + (frame.lct != null ? 256 * 4 : 0);
+    }
+    if (rawData != null && !rawData.isDirect()) {
+      byteCount += rawData.capacity();
+    }
+    return byteCount;
+  }
+
+  Frame getFrame(int n) {
+    return frames.get(n);
+  }
+
+  int[] getGlobalColorTable() {
+    return gct;
+  }
+
+  int getBackgroundIndex() {
+    return bgIndex;
+  }
+
+  /**
+   * Gets a new view of the image data, with its own position, for decoding frames.
+   */
+  ByteBuffer getData() {
+    return rawData.duplicate();
+  }
+}
@@ -0,0 +1,185 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A JSON payload, parsed in a single streaming pass which also collects all of its typed objects
+ * (those with a "_type" key, such as assets), so that they can be found without walking the parsed
+ * tree again.
+ * <p/>
+ * Parsing is strict: anything which isn't valid JSON, trailing content, and objects with a key given
+ * more than once are all rejected, rather than guessed at.
+ * <p/>
+ * The parsed objects must not be modified, as the typed objects would then be out of date.
+ */
+public final class JSONPayload {
+  private static final String TYPE_KEY = "_type";
+
+  // Payloads parsed, so that it can be checked that each notification is only parsed once
+  private static final AtomicLong parseCount = new AtomicLong();
+
+  private final @NonNull JSONObject root;
+  private final @NonNull List<JSONObject> typedObjects;
+
+  private JSONPayload(@NonNull JSONObject root, @NonNull List<JSONObject> typedObjects) {
+    this.root = root;
+    this.typedObjects = Collections.unmodifiableList(typedObjects);
+  }
+
+  /**
+   * Parse a JSON object.
+   *
+   * @param json The JSON to parse, which must be an object
+   * @return The parsed payload
+   * @throws JSONException if the JSON is malformed, is not an object, or has a duplicate key
+   */
+  @NonNull
+  public static JSONPayload parse(@NonNull String json) throws JSONException {
+    parseCount.incrementAndGet();
+    JsonReader reader = new JsonReader(new StringReader(json));
+
+    List<JSONObject> typedObjects = new ArrayList<>();
+    try {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new JSONException("Payload is not a JSON object");
+      }
+      JSONObject root = readObject(reader, typedObjects);
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new JSONException("Unexpected content after the payload object");
+      }
+      return new JSONPayload(root, typedObjects);
+    } catch (IOException | IllegalStateException | NumberFormatException ex) {
+      JSONException jsonException = new JSONException("Malformed JSON payload: " + ex.getMessage());
+      jsonException.initCause(ex);
+      throw jsonException;
+    }
+  }
+
+  /**
+   * Get the total number of payloads parsed by this process. Sample it before and after handling a
+   * notification to count how many times it was parsed.
+   */
+  public static long getParseCount() {
+    return parseCount.get();
+  }
+
+  @NonNull
+  private static JSONObject readObject(@NonNull JsonReader reader, @NonNull List<JSONObject> typedObjects)
+    throws IOException, JSONException {
+    JSONObject object = new JSONObject();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (object.has(name)) {
+        // Which of the values wins would be up to the parser, so don't pick one.
+        throw new JSONException("Duplicate key: " + name);
+      }
+      object.put(name, readValue(reader, typedObjects));
+    }
+    reader.endObject();
+
+    // Children are collected before their parents, the same order a JSONObjectVisitor visits them in.
+    if (object.has(TYPE_KEY)) {
+      typedObjects.add(object);
+    }
+    return object;
+  }
+
+  @NonNull
+  private static JSONArray readArray(@NonNull JsonReader reader, @NonNull List<JSONObject> typedObjects)
+    throws IOException, JSONException {
+    JSONArray array = new JSONArray();
+
+    reader.beginArray();
+    while (reader.hasNext()) {
+      array.put(readValue(reader, typedObjects));
+    }
+    reader.endArray();
+
+    return array;
+  }
+
+  @NonNull
+  private static Object readValue(@NonNull JsonReader reader, @NonNull List<JSONObject> typedObjects)
+    throws IOException, JSONException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        return readObject(reader, typedObjects);
+      case BEGIN_ARRAY:
+        return readArray(reader, typedObjects);
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return JSONObject.NULL;
+      case NUMBER:
+        return readNumber(reader.nextString());
+      default:
+        return reader.nextString();
+    }
+  }
+
+  /**
+   * Convert a number to the same type the org.json tokenizer would have.
+   */
+  @NonNull
+  private static Number readNumber(@NonNull String literal) {
+    if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+      try {
+        long value = Long.parseLong(literal);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException ex) {
+        // Too large for a long, fall through to a double.
+      }
+    }
+    return Double.valueOf(literal);
+  }
+
+  @NonNull
+  public JSONObject getRoot() {
+    return root;
+  }
+
+  /**
+   * Get every object in this payload with a "_type" key, children before their parents.
+   */
+  @NonNull
+  public List<JSONObject> getTypedObjects() {
+    return typedObjects;
+  }
+}
@@ -0,0 +1,462 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads frame data from an (animated) WebP file and decodes it into individual frames for animation
+ * purposes.
+ *
+ * Only the container is parsed up front. Each frame's bitstream is decoded on demand by re-wrapping
+ * it as a still WebP image for {@link BitmapFactory}, and composited onto a single canvas bitmap, so
+ * at most one decoded frame is held in memory besides the canvas. The file itself is memory-mapped
+ * rather than read onto the heap.
+ */
+public class WebPDecoder implements AnimationDecoder {
+  private static final String LOG_TAG = WebPDecoder.class.getCanonicalName();
+
+  /**
+   * File read status: No errors.
+   */
+  public static final int STATUS_OK = 0;
+  /**
+   * File read status: Error decoding file
+   */
+  public static final int STATUS_FORMAT_ERROR = 1;
+  /**
+   * File read status: Unable to open source.
+   */
+  public static final int STATUS_OPEN_ERROR = 2;
+
+  // A still image never needs to advance, but is re-drawn this often so that it behaves like a frame.
+  private static final int STILL_IMAGE_DELAY = 1000;
+
+  private static final int FOURCC_RIFF = fourCC("RIFF");
+  private static final int FOURCC_WEBP = fourCC("WEBP");
+  private static final int FOURCC_VP8X = fourCC("VP8X");
+  private static final int FOURCC_ANIM = fourCC("ANIM");
+  private static final int FOURCC_ANMF = fourCC("ANMF");
+  private static final int FOURCC_ALPH = fourCC("ALPH");
+  private static final int FOURCC_VP8 = fourCC("VP8 ");
+  private static final int FOURCC_VP8L = fourCC("VP8L");
+
+  private static final int VP8X_FLAG_ALPHA = 0x10;
+  private static final int ANMF_FLAG_NO_BLEND = 0x02;
+  private static final int ANMF_FLAG_DISPOSE = 0x01;
+
+  /**
+   * Inner model class housing metadata for each frame
+   */
+  private static class WebPFrame {
+    public int x, y, width, height;
+    /* Delay, in ms, to next frame */
+    public int delay;
+    /* Whether to alpha-blend this frame over the canvas, or replace its area */
+    public boolean blend;
+    /* Whether to clear this frame's area once it has been displayed */
+    public boolean dispose;
+    /* Location of the ALPH chunk (including its header) in the file, or -1 if none */
+    public int alphaOffset = -1;
+    public int alphaLength;
+    /* Location of the VP8 / VP8L chunk (including its header) in the file */
+    public int bitstreamOffset;
+    public int bitstreamLength;
+  }
+
+  private int status;
+  private int width;
+  private int height;
+  private int loopCount;
+
+  private @Nullable ByteBuffer rawData;
+  private @NonNull List<WebPFrame> frames = new ArrayList<>();
+  private int framePointer = -1;
+  private int renderedFrame = -1;
+
+  private @Nullable Bitmap canvasImage;
+  private @Nullable Canvas canvas;
+  private final @NonNull Paint clearPaint;
+  private final @NonNull Rect frameRect;
+
+  public WebPDecoder() {
+    clearPaint = new Paint();
+    clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    frameRect = new Rect();
+  }
+
+  private static int fourCC(@NonNull String code) {
+    return (code.charAt(0)) |
+      (code.charAt(1) << 8) |
+      (code.charAt(2) << 16) |
+      (code.charAt(3) << 24);
+  }
+
+  private static int readUInt24(@NonNull ByteBuffer buffer) {
+    int b0 = buffer.get() & 0xff;
+    int b1 = buffer.get() & 0xff;
+    int b2 = buffer.get() & 0xff;
+    return b0 | (b1 << 8) | (b2 << 16);
+  }
+
+  /**
+   * Reads a WebP image from a file
+   *
+   * @param file containing the WebP image.
+   * @return read status code (0 = no errors)
+   */
+  public int read(@NonNull File file) {
+    try {
+      rawData = FileUtilities.mapFile(file);
+    } catch (IOException ex) {
+      Log.w(LOG_TAG, "Error opening WebP file", ex);
+      status = STATUS_OPEN_ERROR;
+      return status;
+    }
+
+    rawData.order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      readContainer(rawData);
+    } catch (BufferUnderflowException ex) {
+      Log.w(LOG_TAG, "WebP file was shorter than its chunks claim", ex);
+      status = STATUS_FORMAT_ERROR;
+    } catch (IllegalArgumentException ex) {
+      Log.w(LOG_TAG, "WebP file has invalid chunk sizes", ex);
+      status = STATUS_FORMAT_ERROR;
+    }
+
+    if (status == STATUS_OK && frames.size() == 0) {
+      status = STATUS_FORMAT_ERROR;
+    }
+
+    if (status == STATUS_OK) {
+      canvasImage = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      canvas = new Canvas(canvasImage);
+    }
+
+    return status;
+  }
+
+  private void readContainer(@NonNull ByteBuffer data) {
+    if (data.getInt() != FOURCC_RIFF) {
+      status = STATUS_FORMAT_ERROR;
+      return;
+    }
+    int riffEnd = Math.min(data.limit(), (int) Math.min(Integer.MAX_VALUE, (data.getInt() & 0xffffffffL) + 8));
+    if (data.getInt() != FOURCC_WEBP) {
+      status = STATUS_FORMAT_ERROR;
+      return;
+    }
+
+    WebPFrame stillFrame = null;
+    long loopPixelCount = 0;
+
+    while (data.position() + 8 <= riffEnd) {
+      int chunkStart = data.position();
+      int fourCC = data.getInt();
+      int chunkSize = data.getInt();
+      int payloadStart = data.position();
+      int payloadEnd = payloadStart + chunkSize;
+      if (chunkSize < 0 || payloadEnd > riffEnd) {
+        status = STATUS_FORMAT_ERROR;
+        return;
+      }
+
+      if (fourCC == FOURCC_VP8X) {
+        data.get(); // flags
+        data.position(data.position() + 3); // reserved
+        width = readUInt24(data) + 1;
+        height = readUInt24(data) + 1;
+        if (!isCanvasSizeValid()) {
+          return;
+        }
+      } else if (fourCC == FOURCC_ANIM) {
+        data.getInt(); // background color, we always dispose to transparent like browsers do
+        loopCount = data.getShort() & 0xffff;
+      } else if (fourCC == FOURCC_ANMF) {
+        WebPFrame frame = new WebPFrame();
+        frame.x = readUInt24(data) * 2;
+        frame.y = readUInt24(data) * 2;
+        frame.width = readUInt24(data) + 1;
+        frame.height = readUInt24(data) + 1;
+        frame.delay = readUInt24(data);
+        int flags = data.get() & 0xff;
+        frame.blend = (flags & ANMF_FLAG_NO_BLEND) == 0;
+        frame.dispose = (flags & ANMF_FLAG_DISPOSE) != 0;
+
+        // The limits on GIFs apply here too, but a WebP which breaks them is rejected outright.
+        long pixelCount = (long) frame.width * frame.height;
+        if (pixelCount > GifImage.MAX_PIXEL_COUNT) {
+          Log.w(LOG_TAG, "WebP frame is too large: " + frame.width + "x" + frame.height);
+          status = STATUS_FORMAT_ERROR;
+          return;
+        }
+        loopPixelCount += pixelCount;
+        if (frames.size() >= GifImage.MAX_FRAME_COUNT || loopPixelCount > GifImage.MAX_LOOP_PIXEL_COUNT) {
+          Log.w(LOG_TAG, "WebP has too many frames, or too many pixels to decode per loop");
+          status = STATUS_FORMAT_ERROR;
+          return;
+        }
+
+        readFrameData(data, frame, payloadEnd);
+        if (frame.bitstreamLength > 0) {
+          frames.add(frame);
+        }
+      } else if (fourCC == FOURCC_ALPH || fourCC == FOURCC_VP8 || fourCC == FOURCC_VP8L) {
+        // Chunks of a still image, either simple (VP8 / VP8L only) or extended (VP8X + ALPH + VP8).
+        if (stillFrame == null) {
+          stillFrame = new WebPFrame();
+          stillFrame.delay = STILL_IMAGE_DELAY;
+          stillFrame.blend = false;
+        }
+        recordChunk(stillFrame, fourCC, chunkStart, payloadEnd);
+      }
+
+      data.position(payloadEnd + (chunkSize & 1));
+    }
+
+    if (frames.size() == 0 && stillFrame != null && stillFrame.bitstreamLength > 0) {
+      if (width == 0 || height == 0) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeFrame(stillFrame, options);
+        width = options.outWidth;
+        height = options.outHeight;
+      }
+      stillFrame.width = width;
+      stillFrame.height = height;
+      frames.add(stillFrame);
+    }
+
+    isCanvasSizeValid();
+  }
+
+  /**
+   * Checks that the canvas isn't empty, and no larger than the largest GIF we would read. The canvas
+   * size comes straight from the file, so without a limit a few header bytes could ask for gigabytes.
+   */
+  private boolean isCanvasSizeValid() {
+    if (width <= 0 || height <= 0 || (long) width * height > GifImage.MAX_PIXEL_COUNT) {
+      Log.w(LOG_TAG, "Invalid WebP canvas size: " + width + "x" + height);
+      status = STATUS_FORMAT_ERROR;
+      return false;
+    }
+    return true;
+  }
+
+  private void readFrameData(@NonNull ByteBuffer data, @NonNull WebPFrame frame, int frameEnd) {
+    while (data.position() + 8 <= frameEnd) {
+      int chunkStart = data.position();
+      int fourCC = data.getInt();
+      int chunkSize = data.getInt();
+      int chunkEnd = data.position() + chunkSize;
+      if (chunkSize < 0 || chunkEnd > frameEnd) {
+        return;
+      }
+
+      recordChunk(frame, fourCC, chunkStart, chunkEnd);
+      data.position(chunkEnd + (chunkSize & 1));
+    }
+  }
+
+  private static void recordChunk(@NonNull WebPFrame frame, int fourCC, int chunkStart, int chunkEnd) {
+    if (fourCC == FOURCC_ALPH) {
+      frame.alphaOffset = chunkStart;
+      frame.alphaLength = chunkEnd - chunkStart;
+    } else if (fourCC == FOURCC_VP8 || fourCC == FOURCC_VP8L) {
+      frame.bitstreamOffset = chunkStart;
+      frame.bitstreamLength = chunkEnd - chunkStart;
+    }
+  }
+
+  /**
+   * Wraps the chunks of a single frame into a standalone still WebP file, and decodes it.
+   */
+  @Nullable
+  private Bitmap decodeFrame(@NonNull WebPFrame frame, @NonNull BitmapFactory.Options options) {
+    ByteBuffer data = rawData;
+    if (data == null) {
+      return null;
+    }
+
+    boolean hasAlphaChunk = frame.alphaOffset >= 0;
+    int alphaLength = hasAlphaChunk ? frame.alphaLength + (frame.alphaLength & 1) : 0;
+    int bitstreamLength = frame.bitstreamLength + (frame.bitstreamLength & 1);
+    // An ALPH chunk is only valid within an extended file, which needs a VP8X header.
+    int vp8xLength = hasAlphaChunk ? 18 : 0;
+
+    int riffSize = 4 + vp8xLength + alphaLength + bitstreamLength;
+    ByteBuffer still = ByteBuffer.allocate(8 + riffSize).order(ByteOrder.LITTLE_ENDIAN);
+    still.putInt(FOURCC_RIFF);
+    still.putInt(riffSize);
+    still.putInt(FOURCC_WEBP);
+
+    if (hasAlphaChunk) {
+      still.putInt(FOURCC_VP8X);
+      still.putInt(10);
+      still.put((byte) VP8X_FLAG_ALPHA);
+      still.put((byte) 0).put((byte) 0).put((byte) 0);
+      putUInt24(still, frame.width - 1);
+      putUInt24(still, frame.height - 1);
+
+      copyChunk(data, frame.alphaOffset, frame.alphaLength, still);
+    }
+    copyChunk(data, frame.bitstreamOffset, frame.bitstreamLength, still);
+
+    byte[] bytes = still.array();
+    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+  }
+
+  private static void putUInt24(@NonNull ByteBuffer buffer, int value) {
+    buffer.put((byte) (value & 0xff));
+    buffer.put((byte) ((value >> 8) & 0xff));
+    buffer.put((byte) ((value >> 16) & 0xff));
+  }
+
+  private static void copyChunk(@NonNull ByteBuffer source, int offset, int length, @NonNull ByteBuffer target) {
+    ByteBuffer chunk = source.duplicate();
+    chunk.position(offset);
+    chunk.limit(offset + length);
+    target.put(chunk);
+    if ((length & 1) != 0) {
+      target.put((byte) 0);
+    }
+  }
+
+  @Override
+  public void advance() {
+    if (frames.size() == 0) {
+      return;
+    }
+    framePointer = (framePointer + 1) % frames.size();
+  }
+
+  @Override
+  public int getNextDelay() {
+    if (frames.size() == 0 || framePointer < 0) {
+      return -1;
+    }
+    return frames.get(framePointer).delay;
+  }
+
+  @Override
+  public Bitmap getNextFrame() {
+    if (frames.size() == 0 || framePointer < 0 || canvas == null) {
+      return null;
+    }
+
+    if (framePointer == renderedFrame) {
+      // Only happens for single frame images, the canvas already contains this frame.
+      return canvasImage;
+    }
+
+    if (framePointer == 0) {
+      canvasImage.eraseColor(0);
+    } else {
+      WebPFrame previousFrame = frames.get(framePointer - 1);
+      if (previousFrame.dispose) {
+        frameRect.set(previousFrame.x, previousFrame.y, previousFrame.x + previousFrame.width, previousFrame.y + previousFrame.height);
+        canvas.drawRect(frameRect, clearPaint);
+      }
+    }
+
+    WebPFrame frame = frames.get(framePointer);
+    Bitmap frameImage;
+    try {
+      frameImage = decodeFrame(frame, new BitmapFactory.Options());
+    } catch (OutOfMemoryError ex) {
+      Log.w(LOG_TAG, "Out of memory decoding WebP frame", ex);
+      frameImage = null;
+    }
+
+    if (frameImage != null) {
+      frameRect.set(frame.x, frame.y, frame.x + frame.width, frame.y + frame.height);
+      if (!frame.blend) {
+        canvas.drawRect(frameRect, clearPaint);
+      }
+      canvas.drawBitmap(frameImage, null, frameRect, null);
+      frameImage.recycle();
+    }
+
+    renderedFrame = framePointer;
+    return canvasImage;
+  }
+
+  @Override
+  public int getFrameCount() {
+    return frames.size();
+  }
+
+  @Override
+  public int getLoopCount() {
+    return loopCount;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public boolean setTargetSize(int targetWidth, int targetHeight) {
+    // Frames are always decoded at full size.
+    return false;
+  }
+
+  @Override
+  public int getByteCount() {
+    // The canvas, plus one decoded frame at a time. The file itself is mapped, not on the heap.
+    return width * height * 4 * 2;
+  }
+
+  @Override
+  public void recycle() {
+    if (canvasImage != null) {
+      canvasImage.recycle();
+    }
+
+    canvasImage = null;
+    canvas = null;
+    rawData = null;
+    frames = new ArrayList<>();
+  }
+}
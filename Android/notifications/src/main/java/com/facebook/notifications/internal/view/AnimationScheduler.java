@@ -0,0 +1,253 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives every running animation from the display's frame callbacks on the main thread, and decodes
+ * their frames ahead of time on a single shared worker thread.
+ *
+ * The host of the animations pauses all of them while it is not in the foreground.
+ */
+public final class AnimationScheduler {
+  /**
+   * An animation driven by the scheduler.
+   */
+  interface Client {
+    /**
+     * Invoked on the main thread once for every display frame, for as long as the client is added.
+     *
+     * @param frameTimeNanos The time the frame started rendering, in the {@link System#nanoTime()}
+     *                       timebase.
+     */
+    void onAnimationFrame(long frameTimeNanos);
+
+    /**
+     * Invoked on the main thread when animations resume after being paused.
+     */
+    void onAnimationResumed();
+  }
+
+  /**
+   * Posts a callback for the next display frame, which calls {@link #onFrame(long)}.
+   */
+  interface Ticker {
+    void postFrame();
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private class ChoreographerTicker implements Ticker, Choreographer.FrameCallback {
+    private final @NonNull Choreographer choreographer = Choreographer.getInstance();
+
+    @Override
+    public void postFrame() {
+      choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      onFrame(frameTimeNanos);
+    }
+  }
+
+  /**
+   * Choreographer only exists from Jelly Bean, before that frames are approximated with a timer.
+   */
+  private class HandlerTicker implements Ticker, Runnable {
+    private static final long FRAME_DELAY_MS = 16;
+    private final @NonNull Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void postFrame() {
+      handler.postDelayed(this, FRAME_DELAY_MS);
+    }
+
+    @Override
+    public void run() {
+      onFrame(System.nanoTime());
+    }
+  }
+
+  private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+    1, 1,
+    30, TimeUnit.SECONDS,
+    new LinkedBlockingQueue<Runnable>()
+  );
+
+  static {
+    // Don't keep the decoding thread around while nothing is animating.
+    DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
+  // Decoding tasks queued, and the thread CPU time they took, so the effect of pausing can be measured
+  private static final AtomicLong decodeTaskCount = new AtomicLong();
+  private static final AtomicLong decodeCpuTimeMillis = new AtomicLong();
+
+  private static AnimationScheduler instance;
+
+  private final @NonNull List<Client> clients;
+  private final @NonNull Ticker ticker;
+  private boolean framePosted;
+  private boolean paused;
+
+  private AnimationScheduler() {
+    clients = new ArrayList<>();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+      ticker = new ChoreographerTicker();
+    } else {
+      ticker = new HandlerTicker();
+    }
+  }
+
+  /**
+   * Create a scheduler driven by the given ticker, rather than by the display.
+   */
+  AnimationScheduler(@NonNull Ticker ticker) {
+    clients = new ArrayList<>();
+    this.ticker = ticker;
+  }
+
+  /**
+   * Get the scheduler. Must be called on the main thread, like all other methods of the scheduler.
+   */
+  @NonNull
+  public static AnimationScheduler getInstance() {
+    if (instance == null) {
+      instance = new AnimationScheduler();
+    }
+    return instance;
+  }
+
+  /**
+   * Run a decoding task on the shared worker. Tasks are run one at a time, in the order they were
+   * submitted.
+   */
+  static void decode(final @NonNull Runnable task) {
+    decodeTaskCount.incrementAndGet();
+    DECODE_EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        long start = SystemClock.currentThreadTimeMillis();
+        try {
+          task.run();
+        } finally {
+          decodeCpuTimeMillis.addAndGet(SystemClock.currentThreadTimeMillis() - start);
+        }
+      }
+    });
+  }
+
+  /**
+   * Get the total CPU time spent decoding animation frames by this process, in milliseconds.
+   * Sample it before and after a period of time to measure how much decoding happened in between.
+   */
+  public static long getDecodeCpuTimeMillis() {
+    return decodeCpuTimeMillis.get();
+  }
+
+  /**
+   * Get the total number of decoding tasks queued by this process. Sample it before and after a period
+   * of time to count how many were queued in between.
+   */
+  public static long getDecodeTaskCount() {
+    return decodeTaskCount.get();
+  }
+
+  /**
+   * Pause or resume all animations. While paused, no display frames are requested, and so no further
+   * frames are decoded. Animations keep their decoders and resume where they left off.
+   */
+  public void setPaused(boolean paused) {
+    if (this.paused == paused) {
+      return;
+    }
+
+    this.paused = paused;
+    if (paused) {
+      return;
+    }
+
+    for (Client client : clients.toArray(new Client[clients.size()])) {
+      client.onAnimationResumed();
+    }
+    postFrameIfNeeded();
+  }
+
+  /**
+   * Returns true if animations are paused.
+   */
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Start invoking a client on every display frame.
+   */
+  void add(@NonNull Client client) {
+    if (clients.contains(client)) {
+      return;
+    }
+    clients.add(client);
+    postFrameIfNeeded();
+  }
+
+  /**
+   * Stop invoking a client. Display frames stop being requested once no clients remain.
+   */
+  void remove(@NonNull Client client) {
+    clients.remove(client);
+  }
+
+  private void postFrameIfNeeded() {
+    if (framePosted || paused || clients.isEmpty()) {
+      return;
+    }
+    framePosted = true;
+    ticker.postFrame();
+  }
+
+  void onFrame(long frameTimeNanos) {
+    framePosted = false;
+    if (paused) {
+      return;
+    }
+
+    // Clients may remove themselves while being invoked.
+    Client[] frameClients = clients.toArray(new Client[clients.size()]);
+    for (Client client : frameClients) {
+      client.onAnimationFrame(frameTimeNanos);
+    }
+
+    postFrameIfNeeded();
+  }
+}
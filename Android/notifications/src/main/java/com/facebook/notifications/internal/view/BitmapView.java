@@ -0,0 +1,195 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+
+/**
+ * Implements a view that draws a bitmap with the FIT_CENTER algorithm. Bitmaps which have not been
+ * decoded ahead of time are decoded off the main thread, and drawn once they are ready.
+ */
+@SuppressLint("ViewConstructor")
+public class BitmapView extends View {
+  /**
+   * Provides the pixel data for a {@link BitmapView}.
+   */
+  public interface BitmapSource {
+    /**
+     * @return The width of the source image, in pixels, or 0 if it is not known.
+     */
+    int getWidth();
+
+    /**
+     * @return The height of the source image, in pixels, or 0 if it is not known.
+     */
+    int getHeight();
+
+    /**
+     * Get the bitmap of the source image if it has already been decoded, without decoding it.
+     */
+    @Nullable
+    Bitmap getCachedBitmap();
+
+    /**
+     * Get a bitmap of the source image, decoding it if needed. Large images may be subsampled, but
+     * never below what it takes to fill a view of the target size. Never called on the main thread.
+     *
+     * @param targetWidth  The width of the view the bitmap is drawn in, in pixels.
+     * @param targetHeight The height of the view the bitmap is drawn in, in pixels.
+     * @return The bitmap, or null if the image could not be decoded.
+     */
+    @Nullable
+    Bitmap getBitmap(int targetWidth, int targetHeight);
+  }
+
+  private final @NonNull BitmapSource source;
+  private final @NonNull Paint antiAliasPaint;
+  private final @NonNull Rect sourceRect;
+  private final @NonNull RectF targetRect;
+
+  private @Nullable Bitmap bitmap;
+  private boolean decodeRequested;
+
+  public BitmapView(@NonNull Context context, @NonNull BitmapSource source) {
+    super(context);
+    this.source = source;
+
+    antiAliasPaint = new Paint();
+    sourceRect = new Rect();
+    targetRect = new RectF();
+
+    antiAliasPaint.setAntiAlias(true);
+    antiAliasPaint.setFilterBitmap(true);
+    antiAliasPaint.setDither(true);
+
+    // A bitmap decoded ahead of time is drawn right away. Anything else is decoded once the view has
+    // been laid out, at the size it is drawn at.
+    bitmap = source.getCachedBitmap();
+  }
+
+  /**
+   * Decode the source's bitmap at the size of the view on the decoding worker, and redraw once it's
+   * done. Only a single decode is ever attempted.
+   */
+  private void requestBitmap() {
+    final int targetWidth = getWidth();
+    final int targetHeight = getHeight();
+    if (bitmap != null || decodeRequested || targetWidth <= 0 || targetHeight <= 0) {
+      return;
+    }
+
+    decodeRequested = true;
+    AnimationScheduler.decode(new Runnable() {
+      @Override
+      public void run() {
+        final Bitmap decoded = source.getBitmap(targetWidth, targetHeight);
+        if (decoded == null) {
+          return;
+        }
+
+        post(new Runnable() {
+          @Override
+          public void run() {
+            bitmap = decoded;
+            invalidate();
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    requestBitmap();
+  }
+
+  @Override
+  protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    int sourceWidth = source.getWidth();
+    int sourceHeight = source.getHeight();
+    if (sourceWidth <= 0 || sourceHeight <= 0) {
+      setMeasuredDimension(0, 0);
+      return;
+    }
+
+    int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+    int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+
+    int measuredWidth = MeasureSpec.getSize(widthMeasureSpec);
+    int measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
+
+    // Equivalent to an ImageView with adjustViewBounds set: keep the source's aspect ratio for
+    // whichever dimension we are free to choose.
+    if (widthMode == MeasureSpec.UNSPECIFIED) {
+      measuredWidth = sourceWidth;
+    } else if (widthMode == MeasureSpec.AT_MOST) {
+      measuredWidth = Math.min(measuredWidth, sourceWidth);
+    }
+
+    if (heightMode != MeasureSpec.EXACTLY) {
+      int aspectHeight = Math.round(measuredWidth * (sourceHeight / (float) sourceWidth));
+      measuredHeight = heightMode == MeasureSpec.AT_MOST
+        ? Math.min(measuredHeight, aspectHeight)
+        : aspectHeight;
+    }
+
+    setMeasuredDimension(measuredWidth, measuredHeight);
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    super.onDraw(canvas);
+
+    if (bitmap == null) {
+      // Not decoded yet, leave the view's background showing until it is.
+      requestBitmap();
+      return;
+    }
+
+    int sourceWidth = source.getWidth();
+    int sourceHeight = source.getHeight();
+    if (sourceWidth <= 0 || sourceHeight <= 0) {
+      return;
+    }
+
+    // The bitmap may be subsampled, so scale from the source's size rather than the bitmap's.
+    float scale = Math.min(getWidth() / (float) sourceWidth, getHeight() / (float) sourceHeight);
+
+    float targetWidth = sourceWidth * scale;
+    float targetHeight = sourceHeight * scale;
+
+    float offsetW = (getWidth() - targetWidth) / 2f;
+    float offsetH = (getHeight() - targetHeight) / 2f;
+
+    sourceRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+    targetRect.set(offsetW, offsetH, offsetW + targetWidth, offsetH + targetHeight);
+
+    canvas.drawBitmap(bitmap, sourceRect, targetRect, antiAliasPaint);
+  }
+}
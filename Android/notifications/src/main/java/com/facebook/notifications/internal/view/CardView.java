@@ -38,6 +38,12 @@ import com.facebook.notifications.internal.content.ContentManager;
 // As this class will only be created via code, suppress the following warning.
 @SuppressLint("ViewConstructor")
 public class CardView extends LinearLayout {
+  /**
+   * The largest size a card is laid out at, in DIP. Nothing in a card is ever drawn larger than this.
+   */
+  public static final int MAX_WIDTH_DIP = 400;
+  public static final int MAX_HEIGHT_DIP = 700;
+
   private final @NonNull CardConfiguration configuration;
 
   private final @NonNull HeroView heroView;
@@ -84,8 +90,8 @@ public class CardView extends LinearLayout {
   private static
   @NonNull
   float[] sizeForCardSize(@NonNull float[] sizes, CardConfiguration.CardSize cardSize) {
-    float layoutW = Math.min(400, sizes[0]);
-    float layoutH = Math.min(700, sizes[1]);
+    float layoutW = Math.min(MAX_WIDTH_DIP, sizes[0]);
+    float layoutH = Math.min(MAX_HEIGHT_DIP, sizes[1]);
 
     switch (cardSize) {
       case Invalid:
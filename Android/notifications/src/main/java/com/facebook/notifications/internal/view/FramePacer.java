@@ -0,0 +1,112 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+/**
+ * Decides when the frames of an animation are shown, against a fixed timeline.
+ *
+ * Each frame is due when the previous one's delay has run out since that one was <em>due</em>, not
+ * since it was actually shown, so lateness from display frame boundaries or slow decoding doesn't
+ * add up over time. Frames whose whole display time has already passed by the time they are decoded
+ * are skipped, to catch up with the timeline.
+ *
+ * The pacer has no clock of its own, all times are passed in, in the {@link System#nanoTime()}
+ * timebase.
+ */
+final class FramePacer {
+  /**
+   * Show the frame now.
+   */
+  static final int ACTION_SHOW = 0;
+  /**
+   * Don't show the frame, its time has already passed. Move on to the next one.
+   */
+  static final int ACTION_SKIP = 1;
+
+  // Like browsers, treat delays too short to be meant literally as the default delay. Many GIFs have
+  // a delay of 0 or 10ms, expecting exactly this.
+  private static final int MIN_FRAME_DELAY_MS = 11;
+  private static final int DEFAULT_FRAME_DELAY_MS = 100;
+
+  // Skipping is only worth it to recover from a short stall. After a longer one, restart the timeline.
+  private static final int MAX_SKIPPED_FRAMES = 5;
+
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  private long nextFrameTimeNanos = -1;
+  private int skippedFrames;
+
+  /**
+   * Get the delay a frame is actually shown for.
+   *
+   * @param delayMs The delay specified by the image, in milliseconds
+   * @return The delay to use, in milliseconds
+   */
+  static int clampDelay(int delayMs) {
+    return delayMs < MIN_FRAME_DELAY_MS ? DEFAULT_FRAME_DELAY_MS : delayMs;
+  }
+
+  /**
+   * Returns true once the next frame is due, and should be shown if it has been decoded.
+   */
+  boolean isFrameDue(long nowNanos) {
+    return nextFrameTimeNanos < 0 || nowNanos >= nextFrameTimeNanos;
+  }
+
+  /**
+   * Decide what to do with the next frame, which has been decoded and is due.
+   *
+   * @param nowNanos The current time
+   * @param delayMs  The delay of the frame, in milliseconds, as specified by the image
+   * @return {@link #ACTION_SHOW} or {@link #ACTION_SKIP}
+   */
+  int onFrameReady(long nowNanos, int delayMs) {
+    long delayNanos = clampDelay(delayMs) * NANOS_PER_MILLI;
+
+    long frameTimeNanos = nextFrameTimeNanos;
+    if (frameTimeNanos < 0) {
+      // The first frame starts the timeline.
+      frameTimeNanos = nowNanos;
+    }
+
+    long frameEndNanos = frameTimeNanos + delayNanos;
+    if (frameEndNanos <= nowNanos) {
+      if (skippedFrames < MAX_SKIPPED_FRAMES) {
+        skippedFrames++;
+        nextFrameTimeNanos = frameEndNanos;
+        return ACTION_SKIP;
+      }
+
+      // Too far behind to catch up, show this frame and continue the timeline from now.
+      frameEndNanos = nowNanos + delayNanos;
+    }
+
+    skippedFrames = 0;
+    nextFrameTimeNanos = frameEndNanos;
+    return ACTION_SHOW;
+  }
+
+  /**
+   * Restart the timeline from the next frame, such as when an animation is resumed after a pause.
+   */
+  void reset() {
+    nextFrameTimeNanos = -1;
+    skippedFrames = 0;
+  }
+}
@@ -23,6 +23,8 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.support.annotation.NonNull;
@@ -30,107 +32,381 @@ import android.support.annotation.Nullable;
 import android.util.Log;
 import android.view.View;
 
-import com.facebook.notifications.internal.utilities.GifDecoder;
+import com.facebook.notifications.internal.utilities.AnimationDecoder;
 
-@SuppressLint("ViewConstructor")
-public class GifView extends View {
-  private class DecoderThread extends Thread {
-    private final @Nullable GifDecoder decoder;
-    private @Nullable Bitmap currentFrame;
-
-    public DecoderThread(@Nullable GifDecoder decoder) {
-      this.decoder = decoder;
-    }
-
-    @Override
-    public void run() {
-      if (decoder == null) {
-        return;
-      }
-
-      while (true) {
-        long frameStart = System.nanoTime();
-
-        decoder.advance();
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
-        int frameDelay = decoder.getNextDelay();
-        long targetNextFrame = frameStart + (frameDelay * 1000000);
-
-        synchronized (this) {
-          currentFrame = decoder.getNextFrame();
-          notifyAll();
-        }
-
-        // Naive: assume all frames take the same amount of time to decode.
-        long currentTime = System.nanoTime();
-        long frameDecodeTime = currentTime - frameStart;
-
-        long sleepTimeNs = (targetNextFrame - currentTime) - frameDecodeTime;
-        long sleepTimeMs = Math.max(0, sleepTimeNs / 1000000);
-
-        postInvalidate();
-
-        try {
-          Thread.sleep(sleepTimeMs);
-          if (Thread.interrupted()) {
-            break;
-          }
-        } catch (InterruptedException ex) {
-          // Thread was killed by View, RIP.
-          break;
-        }
-      }
+@SuppressLint("ViewConstructor")
+public class GifView extends View implements AnimationScheduler.Client {
+  private static final String LOG_TAG = GifView.class.getCanonicalName();
 
-      currentFrame = null;
-      decoder.recycle();
+  /**
+   * A frame decoded ahead of time, waiting for its turn to be shown.
+   */
+  private static class DecodedFrame {
+    private final @Nullable Bitmap bitmap;
+    private final int delay;
+    // Whether the bitmap is one of our frame buffers, which must be handed back once replaced
+    private final boolean buffered;
+
+    private DecodedFrame(@Nullable Bitmap bitmap, int delay, boolean buffered) {
+      this.bitmap = bitmap;
+      this.delay = delay;
+      this.buffered = buffered;
     }
   }
 
-  private static final String LOG_TAG = GifView.class.getCanonicalName();
+  // One buffer being drawn, one waiting to be drawn, and one being decoded into.
+  private static final int MAX_FRAME_BUFFER_COUNT = 3;
 
-  private final @NonNull DecoderThread decoderThread;
+  private final @Nullable AnimationDecoder decoder;
+  private final @Nullable Bitmap poster;
+  private final int frameCount;
+  private final int loopCount;
+  private final int sourceWidth;
+  private final int sourceHeight;
   private final @NonNull Paint antiAliasPaint;
   private final @NonNull Rect sourceRect;
   private final @NonNull RectF targetRect;
 
-  public GifView(@NonNull Context context, @Nullable GifDecoder decoder) {
+  // Written by the decoding worker, read by the main thread
+  private final @NonNull AtomicReference<DecodedFrame> decodedFrame;
+  private final @NonNull Queue<Bitmap> freeFrameBuffers;
+  private final @NonNull Runnable decodeTask;
+  private volatile boolean recycled;
+
+  // Only accessed on the decoding worker
+  private final @NonNull List<Bitmap> frameBuffers;
+  private final @NonNull Canvas frameBufferCanvas;
+  private final @NonNull Paint copyPaint;
+
+  // Only accessed on the main thread
+  private @Nullable Bitmap currentFrame;
+  private boolean currentFrameBuffered;
+  private boolean sized;
+  private boolean decodeRequested;
+  private boolean animating;
+  private boolean finished;
+  private final @NonNull FramePacer pacer;
+  private int framesPlayed;
+
+  // Time spent drawing, for checking that drawing never blocks
+  private int drawCount;
+  private long totalDrawTimeNanos;
+  private long maxDrawTimeNanos;
+
+  public GifView(@NonNull Context context, @Nullable AnimationDecoder decoder) {
+    this(context, decoder, null);
+  }
+
+  /**
+   * @param poster A still image to show until the first frame has been decoded.
+   */
+  public GifView(@NonNull Context context, @Nullable AnimationDecoder decoder, @Nullable Bitmap poster) {
     super(context);
     setDrawingCacheEnabled(false);
     setWillNotCacheDrawing(true);
 
-    decoderThread = new DecoderThread(decoder);
+    this.decoder = decoder;
+    this.poster = poster;
+    frameCount = decoder != null ? decoder.getFrameCount() : 0;
+    loopCount = decoder != null ? decoder.getLoopCount() : 0;
+    sourceWidth = decoder != null ? decoder.getWidth() : 0;
+    sourceHeight = decoder != null ? decoder.getHeight() : 0;
     antiAliasPaint = new Paint();
     sourceRect = new Rect();
     targetRect = new RectF();
+    pacer = new FramePacer();
+    decodedFrame = new AtomicReference<>();
+    freeFrameBuffers = new ConcurrentLinkedQueue<>();
+    frameBuffers = new ArrayList<>();
+    frameBufferCanvas = new Canvas();
+    copyPaint = new Paint();
+    copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    decodeTask = new Runnable() {
+      @Override
+      public void run() {
+        decodeNextFrame();
+      }
+    };
 
     antiAliasPaint.setAntiAlias(true);
     antiAliasPaint.setFilterBitmap(true);
     antiAliasPaint.setDither(true);
   }
 
+  /**
+   * Gets the number of times this view has been drawn.
+   */
+  public int getDrawCount() {
+    return drawCount;
+  }
+
+  /**
+   * Gets the total time spent in {@link #onDraw(Canvas)}, in nanoseconds.
+   */
+  public long getTotalDrawTimeNanos() {
+    return totalDrawTimeNanos;
+  }
+
+  /**
+   * Gets the longest time spent in a single {@link #onDraw(Canvas)}, in nanoseconds.
+   */
+  public long getMaxDrawTimeNanos() {
+    return maxDrawTimeNanos;
+  }
+
+  /**
+   * Runs on the decoding worker.
+   */
+  private void decodeNextFrame() {
+    if (recycled || decoder == null) {
+      return;
+    }
+
+    decoder.advance();
+    int delay = decoder.getNextDelay();
+    Bitmap frame = decoder.getNextFrame();
+
+    // A mutable frame will be overwritten by the decoder while it is still being drawn, so hand over
+    // a copy of it instead. Immutable frames, such as cached ones, can be drawn as they are.
+    boolean buffered = false;
+    if (frame != null && frame.isMutable()) {
+      Bitmap buffer = obtainFrameBuffer(frame);
+      if (buffer != null) {
+        frameBufferCanvas.setBitmap(buffer);
+        frameBufferCanvas.drawBitmap(frame, 0, 0, copyPaint);
+        frameBufferCanvas.setBitmap(null);
+
+        frame = buffer;
+        buffered = true;
+      }
+    }
+
+    DecodedFrame replaced = decodedFrame.getAndSet(new DecodedFrame(frame, delay, buffered));
+    if (replaced != null && replaced.buffered) {
+      freeFrameBuffers.offer(replaced.bitmap);
+    }
+  }
+
+  /**
+   * Get a buffer to copy a decoded frame into, which is not being drawn. Runs on the decoding worker.
+   *
+   * @return A buffer, or null if none could be allocated.
+   */
+  @Nullable
+  private Bitmap obtainFrameBuffer(@NonNull Bitmap frame) {
+    Bitmap buffer = freeFrameBuffers.poll();
+    while (buffer != null && (buffer.getWidth() != frame.getWidth() || buffer.getHeight() != frame.getHeight())) {
+      // Left over from before the frames changed size. Free buffers aren't drawn, so it can go.
+      frameBuffers.remove(buffer);
+      buffer.recycle();
+      buffer = freeFrameBuffers.poll();
+    }
+    if (buffer != null) {
+      return buffer;
+    }
+    if (frameBuffers.size() >= MAX_FRAME_BUFFER_COUNT) {
+      return null;
+    }
+
+    Bitmap.Config config = frame.getConfig();
+    try {
+      buffer = Bitmap.createBitmap(
+        frame.getWidth(),
+        frame.getHeight(),
+        config != null ? config : Bitmap.Config.ARGB_8888
+      );
+    } catch (OutOfMemoryError ex) {
+      Log.w(LOG_TAG, "Out of memory allocating a frame buffer", ex);
+      return null;
+    }
+
+    frameBuffers.add(buffer);
+    return buffer;
+  }
+
+  private void requestDecode() {
+    // Nothing is decoded until the view has been laid out, so that the first frame is decoded at the
+    // size it is drawn at, rather than once at a guessed size and then again at the real one.
+    if (decodeRequested || recycled || decoder == null || !sized) {
+      return;
+    }
+    decodeRequested = true;
+    AnimationScheduler.decode(decodeTask);
+  }
+
+  @Override
+  public void onAnimationFrame(long frameTimeNanos) {
+    if (!pacer.isFrameDue(frameTimeNanos)) {
+      return;
+    }
+
+    if (showDecodedFrame(frameTimeNanos)) {
+      invalidate();
+    }
+  }
+
+  @Override
+  public void onAnimationResumed() {
+    // Restart the timeline, rather than skipping the frames that would have been shown while paused.
+    pacer.reset();
+  }
+
+  /**
+   * Make the frame decoded ahead of time the current frame, if it's ready. Never waits for decoding.
+   *
+   * @return true if the current frame changed
+   */
+  private boolean showDecodedFrame(long frameTimeNanos) {
+    DecodedFrame frame = decodedFrame.getAndSet(null);
+    if (frame == null) {
+      // Still decoding, show it on a later display frame.
+      return false;
+    }
+    decodeRequested = false;
+
+    if (frame.bitmap == null) {
+      Log.w(LOG_TAG, "Failed to decode frame, stopping animation");
+      finished = true;
+      updateAnimating();
+      return false;
+    }
+
+    framesPlayed++;
+    // A loop count of 0 means repeat forever.
+    boolean lastFrame = frameCount <= 1 || (loopCount > 0 && framesPlayed >= loopCount * frameCount);
+
+    int action = pacer.onFrameReady(frameTimeNanos, frame.delay);
+    if (action == FramePacer.ACTION_SKIP && !lastFrame) {
+      // Decoding has fallen behind, move straight on to the next frame.
+      if (frame.buffered) {
+        freeFrameBuffers.offer(frame.bitmap);
+      }
+      if (animating) {
+        requestDecode();
+      }
+      return false;
+    }
+
+    // The frame being replaced is no longer drawn, so the decoder may reuse its buffer.
+    if (currentFrameBuffered) {
+      freeFrameBuffers.offer(currentFrame);
+    }
+    currentFrame = frame.bitmap;
+    currentFrameBuffered = frame.buffered;
+
+    if (lastFrame) {
+      finished = true;
+      updateAnimating();
+      return true;
+    }
+
+    if (animating) {
+      requestDecode();
+    }
+    return true;
+  }
+
+  /**
+   * Animate only while attached and visible, until the last loop has finished.
+   */
+  private void updateAnimating() {
+    boolean shouldAnimate = decoder != null && !recycled && !finished && isShown();
+    if (shouldAnimate == animating) {
+      return;
+    }
+
+    animating = shouldAnimate;
+    if (animating) {
+      // Restart the timeline, rather than skipping the frames that would have been shown while paused.
+      pacer.reset();
+      requestDecode();
+      AnimationScheduler.getInstance().add(this);
+    } else {
+      AnimationScheduler.getInstance().remove(this);
+    }
+  }
+
   @Override
   protected void onAttachedToWindow() {
     super.onAttachedToWindow();
 
-    decoderThread.start();
+    updateAnimating();
   }
 
   @Override
   protected void onDetachedFromWindow() {
-    decoderThread.interrupt();
+    AnimationScheduler.getInstance().remove(this);
+    animating = false;
 
-    try {
-      decoderThread.join();
-    } catch (InterruptedException ex) {
-      Log.e(LOG_TAG, "Failed to kill decoder thread", ex);
+    if (decoder != null && !recycled) {
+      recycled = true;
+      currentFrame = null;
+      currentFrameBuffered = false;
+      decodedFrame.set(null);
+
+      // Recycle on the worker, after any decoding which is still in progress.
+      AnimationScheduler.decode(new Runnable() {
+        @Override
+        public void run() {
+          decoder.recycle();
+          for (Bitmap buffer : frameBuffers) {
+            buffer.recycle();
+          }
+          frameBuffers.clear();
+          freeFrameBuffers.clear();
+        }
+      });
     }
 
     super.onDetachedFromWindow();
   }
 
+  @Override
+  protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+
+    updateAnimating();
+  }
+
+  @Override
+  protected void onWindowVisibilityChanged(int visibility) {
+    super.onWindowVisibilityChanged(visibility);
+
+    updateAnimating();
+  }
+
+  @Override
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    if (decoder == null || recycled || w == 0 || h == 0) {
+      return;
+    }
+
+    // Decode frames no larger than they are drawn. This runs on the worker before any decoding
+    // requested after it, and restarts the animation if the frames change size.
+    final int targetWidth = w;
+    final int targetHeight = h;
+    AnimationScheduler.decode(new Runnable() {
+      @Override
+      public void run() {
+        if (!recycled) {
+          decoder.setTargetSize(targetWidth, targetHeight);
+        }
+      }
+    });
+
+    sized = true;
+    requestDecode();
+  }
+
   @Override
   protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    GifDecoder decoder = decoderThread.decoder;
     if (decoder == null) {
       setMeasuredDimension(0, 0);
       return;
@@ -142,8 +418,8 @@ public class GifView extends View {
     int measuredWidth = MeasureSpec.getSize(widthMeasureSpec);
     int measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
 
-    float sourceWidth = decoder.getWidth();
-    float sourceHeight = decoder.getHeight();
+    float sourceWidth = this.sourceWidth;
+    float sourceHeight = this.sourceHeight;
 
     float destWidth = measuredWidth;
     float destHeight = measuredHeight;
@@ -169,20 +445,24 @@ public class GifView extends View {
   protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
 
-    Bitmap currentFrame;
-    synchronized (decoderThread) {
-      currentFrame = decoderThread.currentFrame;
-      if (currentFrame == null) {
-        try {
-          decoderThread.wait(100);
-          currentFrame = decoderThread.currentFrame;
-        } catch (InterruptedException e) {
-          Log.e(LOG_TAG, "Failed to wait", e);
-        }
-      }
+    long drawStart = System.nanoTime();
+    drawCurrentFrame(canvas, drawStart);
+
+    long drawTime = System.nanoTime() - drawStart;
+    drawCount++;
+    totalDrawTimeNanos += drawTime;
+    maxDrawTimeNanos = Math.max(maxDrawTimeNanos, drawTime);
+  }
+
+  private void drawCurrentFrame(@NonNull Canvas canvas, long drawTimeNanos) {
+    if (currentFrame == null) {
+      // The first frame may have been decoded since the last display frame.
+      showDecodedFrame(drawTimeNanos);
     }
 
+    Bitmap currentFrame = this.currentFrame != null ? this.currentFrame : poster;
     if (currentFrame == null) {
+      // Not decoded yet and no poster, leave the view's background showing until it is.
       return;
     }
 
@@ -0,0 +1,200 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import com.facebook.notifications.internal.activity.CardActivity;
+import com.facebook.notifications.internal.asset.AssetManager;
+import com.facebook.notifications.internal.asset.handlers.ColorAssetHandler;
+import com.facebook.notifications.internal.content.ContentManager;
+import com.facebook.notifications.internal.utilities.JSONPayload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a notification is only parsed once on its way from the push bundle to the card.
+ * JSON parsing needs the Android implementation of org.json, so this runs under Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class NotificationsManagerParseTest {
+  private static final int ACTION_COUNT = 50;
+  private static final int FILLER_COUNT = 2000;
+
+  private Intent preparedIntent;
+  private Exception prepareError;
+
+  @Before
+  public void setUp() {
+    // Prepare on the test thread, so that the callback has run once prepareCard() returns.
+    NotificationsManager.setPrepareExecutor(new Executor() {
+      @Override
+      public void execute(@NonNull Runnable command) {
+        command.run();
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    NotificationsManager.setPrepareExecutor(null);
+  }
+
+  private static String color(int index) {
+    return String.format("{\"_type\": \"Color\", \"rgbaHex\": \"#%06XFF\"}", index & 0xffffff);
+  }
+
+  private static String text(String text) {
+    return "{\"_type\": \"StyledText\", \"size\": 15, \"text\": \"" + text + "\", \"color\": \"#334D5CFF\"}";
+  }
+
+  /**
+   * Builds a card with many actions, and a lot of typed objects the card doesn't display. Every
+   * asset is a color, so nothing is downloaded.
+   */
+  private static String buildLargeCard() {
+    StringBuilder actions = new StringBuilder();
+    for (int i = 0; i < ACTION_COUNT; i++) {
+      if (i > 0) {
+        actions.append(',');
+      }
+      actions.append("{\"backgroundColor\": \"#61B6E5FF\", \"content\": ")
+        .append(text("Action " + i))
+        .append(", \"url\": \"https://example.com/").append(i).append("\"}");
+    }
+
+    StringBuilder filler = new StringBuilder();
+    for (int i = 0; i < FILLER_COUNT; i++) {
+      if (i > 0) {
+        filler.append(',');
+      }
+      filler.append("{\"background\": ").append(color(i)).append(", \"content\": ").append(text("Filler " + i)).append('}');
+    }
+
+    return "{"
+      + "\"version\": \"1.0\","
+      + "\"dismissColor\": \"#334D5CFF\","
+      + "\"size\": \"small\","
+      + "\"cornerRadius\": 12.0,"
+      + "\"contentInset\": 10,"
+      + "\"backdropColor\": \"#000000CC\","
+      + "\"hero\": {\"background\": " + color(1) + ", \"content\": " + text("Hero") + ", \"contentAlign\": \"bottom\"},"
+      + "\"body\": {\"background\": " + color(2) + ", \"content\": " + text("Body") + "},"
+      + "\"alert\": {\"title\": \"Title\", \"body\": \"Body\"},"
+      + "\"actions\": {\"style\": \"attached\", \"layoutStyle\": \"vertical\", \"background\": " + color(3)
+      + ", \"contentInset\": 10, \"cornerRadius\": 8, \"actions\": [" + actions + "]},"
+      + "\"filler\": [" + filler + "]"
+      + "}";
+  }
+
+  private void prepare(@NonNull String card) {
+    Bundle bundle = new Bundle();
+    bundle.putString("fb_push_card", card);
+
+    NotificationsManager.prepareCard(RuntimeEnvironment.application, bundle, new NotificationsManager.PrepareCallback() {
+      @Override
+      public void onPrepared(@NonNull Intent presentationIntent) {
+        preparedIntent = presentationIntent;
+      }
+
+      @Override
+      public void onError(@NonNull Exception exception) {
+        prepareError = exception;
+      }
+    });
+    Robolectric.flushForegroundThreadScheduler();
+  }
+
+  /**
+   * Gives the activity its own asset and content managers, as it gets once the intent has been
+   * parceled on its way to the activity. Every asset of the card is a color.
+   */
+  @NonNull
+  private static Intent withOwnManagers(@NonNull Intent intent) {
+    AssetManager assetManager = new AssetManager();
+    assetManager.registerHandler(ColorAssetHandler.TYPE, new ColorAssetHandler());
+
+    Intent result = new Intent(intent);
+    result.putExtra(CardActivity.EXTRA_ASSET_MANAGER, assetManager);
+    result.putExtra(CardActivity.EXTRA_CONTENT_MANAGER, new ContentManager());
+    return result;
+  }
+
+  @Test
+  public void testPreparingParsesOnce() {
+    String card = buildLargeCard();
+
+    long parseCount = JSONPayload.getParseCount();
+    prepare(card);
+
+    assertNull(prepareError);
+    assertNotNull(preparedIntent);
+    assertNotNull(preparedIntent.getParcelableExtra(CardActivity.EXTRA_CONFIGURATION));
+    assertEquals(1, JSONPayload.getParseCount() - parseCount);
+  }
+
+  @Test
+  public void testPreparedCardIsNotParsedAgain() {
+    prepare(buildLargeCard());
+    assertNull(prepareError);
+    assertNotNull(preparedIntent);
+
+    long parseCount = JSONPayload.getParseCount();
+    Robolectric.buildActivity(CardActivity.class)
+      .withIntent(withOwnManagers(preparedIntent))
+      .create()
+      .start()
+      .resume()
+      .pause()
+      .stop()
+      .destroy();
+
+    assertEquals(0, JSONPayload.getParseCount() - parseCount);
+  }
+
+  @Test
+  public void testCardWithoutConfigurationIsParsedOnce() {
+    Intent intent = new Intent(RuntimeEnvironment.application, CardActivity.class);
+    intent.putExtra(CardActivity.EXTRA_CARD_PAYLOAD, buildLargeCard());
+
+    long parseCount = JSONPayload.getParseCount();
+    Robolectric.buildActivity(CardActivity.class)
+      .withIntent(intent)
+      .create()
+      .destroy();
+
+    assertEquals(1, JSONPayload.getParseCount() - parseCount);
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.asset.handlers;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the config and sample size image assets are decoded with. Bounds aren't decoded in unit
+ * tests, so the format of the image is unknown, and only the payload's hint can make it opaque.
+ */
+public class BitmapAssetHandlerTest {
+  private static File writeImage() throws IOException {
+    File file = File.createTempFile("image", ".png");
+    file.deleteOnExit();
+
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testOpaqueHintSelectsRGB565() throws IOException {
+    BitmapAssetHandler.BitmapAsset asset = new BitmapAssetHandler.BitmapAsset(writeImage(), true);
+    assertEquals(Bitmap.Config.RGB_565, asset.getConfig());
+  }
+
+  @Test
+  public void testImageWithoutHintStaysARGB8888() throws IOException {
+    BitmapAssetHandler.BitmapAsset asset = new BitmapAssetHandler.BitmapAsset(writeImage(), false);
+    assertEquals(Bitmap.Config.ARGB_8888, asset.getConfig());
+  }
+
+  @Test
+  public void testPanoramaInSmallHeroIsSubsampled() {
+    // Drawn 1200x150 in a 1200x600 hero, which 2000x250 still fills.
+    assertEquals(4, BitmapAssetHandler.BitmapAsset.getSampleSize(8000, 1000, 1200, 600));
+  }
+
+  @Test
+  public void testSubsamplingKeepsTheViewFilled() {
+    assertEquals(2, BitmapAssetHandler.BitmapAsset.getSampleSize(2400, 1200, 1200, 600));
+    assertEquals(1, BitmapAssetHandler.BitmapAsset.getSampleSize(2399, 1199, 1200, 600));
+    // Drawn 250x600, the height has to fill the view.
+    assertEquals(4, BitmapAssetHandler.BitmapAsset.getSampleSize(1000, 2400, 1200, 600));
+    assertEquals(2, BitmapAssetHandler.BitmapAsset.getSampleSize(1000, 2399, 1200, 600));
+  }
+
+  @Test
+  public void testImageSmallerThanViewIsNotSubsampled() {
+    assertEquals(1, BitmapAssetHandler.BitmapAsset.getSampleSize(640, 480, 1200, 600));
+  }
+
+  @Test
+  public void testUnknownSizeIsNotSubsampled() {
+    assertEquals(1, BitmapAssetHandler.BitmapAsset.getSampleSize(8000, 1000, 0, 0));
+    assertEquals(1, BitmapAssetHandler.BitmapAsset.getSampleSize(0, 0, 1200, 600));
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which bitmap config images are decoded with, and how much memory that takes.
+ */
+public class BitmapUtilitiesTest {
+  private static final int PNG_COLOR_TYPE_RGB = 2;
+  private static final int PNG_COLOR_TYPE_RGBA = 6;
+
+  /**
+   * Write the chunk headers of a PNG, up to its image data, which is all that is read to tell if it
+   * is opaque.
+   */
+  private static File writePNG(int colorType, boolean transparencyChunk) throws IOException {
+    File file = File.createTempFile("image", ".png");
+    file.deleteOnExit();
+
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      out.writeLong(0x89504E470D0A1A0AL);
+
+      out.writeInt(13);
+      out.writeInt(0x49484452); // IHDR
+      out.writeInt(640);
+      out.writeInt(480);
+      out.writeByte(8); // bit depth
+      out.writeByte(colorType);
+      out.writeByte(0); // compression
+      out.writeByte(0); // filter
+      out.writeByte(0); // interlace
+      out.writeInt(0); // CRC, which isn't checked
+
+      if (transparencyChunk) {
+        out.writeInt(6);
+        out.writeInt(0x74524E53); // tRNS
+        out.write(new byte[6]);
+        out.writeInt(0);
+      }
+
+      out.writeInt(0);
+      out.writeInt(0x49444154); // IDAT
+      out.writeInt(0);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testOpaqueImagesUseRGB565() {
+    assertEquals(Bitmap.Config.RGB_565, BitmapUtilities.getPreferredConfig(true, false, null));
+    assertEquals(Bitmap.Config.RGB_565, BitmapUtilities.getPreferredConfig(true, true, null));
+  }
+
+  @Test
+  public void testImagesWithAlphaUseARGB8888() {
+    assertEquals(Bitmap.Config.ARGB_8888, BitmapUtilities.getPreferredConfig(false, false, null));
+    assertEquals(Bitmap.Config.ARGB_8888, BitmapUtilities.getPreferredConfig(false, true, null));
+  }
+
+  @Test
+  public void testHardwareConfigOnlyFromAPI26() {
+    for (int sdkInt = 15; sdkInt < 26; sdkInt++) {
+      assertNull(BitmapUtilities.findHardwareConfig(sdkInt));
+    }
+
+    // The SDK compiled against predates hardware bitmaps, so it is only found on newer platforms.
+    Bitmap.Config hardware = BitmapUtilities.findHardwareConfig(26);
+    if (hardware != null) {
+      assertEquals("HARDWARE", hardware.name());
+    }
+  }
+
+  @Test
+  public void testHardwareConfigPreferredWhereAllowed() {
+    // Any config stands in for the hardware one, which doesn't exist in the SDK compiled against.
+    Bitmap.Config hardware = Bitmap.Config.ALPHA_8;
+    assertSame(hardware, BitmapUtilities.getPreferredConfig(true, true, hardware));
+    assertSame(hardware, BitmapUtilities.getPreferredConfig(false, true, hardware));
+
+    // Region decoders can't produce hardware bitmaps.
+    assertEquals(Bitmap.Config.RGB_565, BitmapUtilities.getPreferredConfig(true, false, hardware));
+    assertEquals(Bitmap.Config.ARGB_8888, BitmapUtilities.getPreferredConfig(false, false, hardware));
+  }
+
+  @Test
+  public void testBytesPerPixel() {
+    assertEquals(1, BitmapUtilities.getBytesPerPixel(Bitmap.Config.ALPHA_8));
+    assertEquals(2, BitmapUtilities.getBytesPerPixel(Bitmap.Config.RGB_565));
+    assertEquals(4, BitmapUtilities.getBytesPerPixel(Bitmap.Config.ARGB_8888));
+  }
+
+  @Test
+  public void testOpaqueFootprintIsHalved() {
+    int width = 1080;
+    int height = 1920;
+    long opaque = BitmapUtilities.getByteCount(width, height, BitmapUtilities.getPreferredConfig(true, false, null));
+    long alpha = BitmapUtilities.getByteCount(width, height, BitmapUtilities.getPreferredConfig(false, false, null));
+
+    assertEquals(width * height * 2L, opaque);
+    assertEquals(width * height * 4L, alpha);
+    assertEquals(alpha, opaque * 2);
+  }
+
+  @Test
+  public void testFootprintDoesNotOverflow() {
+    assertEquals(40000L * 40000L * 4, BitmapUtilities.getByteCount(40000, 40000, Bitmap.Config.ARGB_8888));
+  }
+
+  @Test
+  public void testJPEGIsOpaque() throws IOException {
+    File file = File.createTempFile("image", ".jpg");
+    file.deleteOnExit();
+    assertTrue(BitmapUtilities.isOpaque(file, "image/jpeg"));
+  }
+
+  @Test
+  public void testPNGOpacity() throws IOException {
+    assertTrue(BitmapUtilities.isOpaque(writePNG(PNG_COLOR_TYPE_RGB, false), "image/png"));
+    assertFalse(BitmapUtilities.isOpaque(writePNG(PNG_COLOR_TYPE_RGBA, false), "image/png"));
+    assertFalse(BitmapUtilities.isOpaque(writePNG(PNG_COLOR_TYPE_RGB, true), "image/png"));
+  }
+
+  @Test
+  public void testUnknownFormatsHaveAlpha() throws IOException {
+    assertFalse(BitmapUtilities.isOpaque(writePNG(PNG_COLOR_TYPE_RGB, false), null));
+    assertFalse(BitmapUtilities.isOpaque(writePNG(PNG_COLOR_TYPE_RGB, false), "image/gif"));
+  }
+}
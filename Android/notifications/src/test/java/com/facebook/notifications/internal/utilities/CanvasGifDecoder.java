@@ -0,0 +1,55 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+/**
+ * A decoder for tests, which composites frames into an array instead of a bitmap. Like the bitmap,
+ * the array is only written through {@link #updateImage(int, int, int, int)}, so it shows exactly
+ * what the bitmap would.
+ */
+final class CanvasGifDecoder extends GifDecoder {
+  private int[] canvas;
+
+  CanvasGifDecoder(GifImage image) {
+    super(image);
+  }
+
+  @Override
+  protected void createImages() {
+    mainPixels = new byte[width * height];
+    mainScratch = new int[sampledWidth * sampledHeight];
+    canvas = new int[sampledWidth * sampledHeight];
+  }
+
+  @Override
+  protected void updateImage(int left, int top, int right, int bottom) {
+    for (int line = top; line < bottom; line++) {
+      int offset = line * sampledWidth + left;
+      System.arraycopy(mainScratch, offset, canvas, offset, right - left);
+    }
+  }
+
+  /**
+   * Decode the next frame, returning the composited frame in place of the bitmap.
+   */
+  int[] getNextCanvas() {
+    getNextFrame();
+    return canvas;
+  }
+}
@@ -0,0 +1,202 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes GIF files for tests, with a global color table and frames of raw LZW data.
+ */
+final class GifBuilder {
+  private static final int MAX_CODE_COUNT = 4096;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  /**
+   * @param colorBits The global color table has 2^colorBits colors, between 1 and 8
+   */
+  GifBuilder(int width, int height, int colorBits) {
+    writeString("GIF89a");
+    writeShort(width);
+    writeShort(height);
+    out.write(0x80 | (colorBits - 1)); // global color table
+    out.write(0); // background color index
+    out.write(0); // pixel aspect ratio
+    for (int i = 0; i < (1 << colorBits); i++) {
+      out.write(i);
+      out.write(255 - i);
+      out.write(i * 7);
+    }
+  }
+
+  /**
+   * Get the color the global color table has at an index, as read by {@link GifImage}.
+   */
+  static int color(int index) {
+    return 0xff000000 | (index << 16) | ((255 - index) << 8) | ((index * 7) & 0xff);
+  }
+
+  GifBuilder loopCount(int loopCount) {
+    out.write(0x21);
+    out.write(0xff);
+    out.write(11);
+    writeString("NETSCAPE2.0");
+    out.write(3);
+    out.write(1);
+    writeShort(loopCount);
+    out.write(0);
+    return this;
+  }
+
+  /**
+   * Add a frame, with its image data given as the LZW code stream.
+   */
+  GifBuilder frame(int x, int y, int width, int height, int delayMs, int dispose, int minCodeSize, byte[] lzwData) {
+    return frame(x, y, width, height, delayMs, dispose, -1, minCodeSize, lzwData);
+  }
+
+  /**
+   * Add a frame, with its image data given as the LZW code stream.
+   *
+   * @param transIndex The transparent color index, or -1 for none
+   */
+  GifBuilder frame(int x, int y, int width, int height, int delayMs, int dispose, int transIndex, int minCodeSize,
+                   byte[] lzwData) {
+    // Graphic control extension
+    out.write(0x21);
+    out.write(0xf9);
+    out.write(4);
+    out.write((dispose << 2) | (transIndex >= 0 ? 1 : 0));
+    writeShort(delayMs / 10);
+    out.write(Math.max(0, transIndex));
+    out.write(0);
+
+    // Image descriptor, without a local color table
+    out.write(0x2c);
+    writeShort(x);
+    writeShort(y);
+    writeShort(width);
+    writeShort(height);
+    out.write(0);
+
+    out.write(minCodeSize);
+    for (int offset = 0; offset < lzwData.length; offset += 255) {
+      int length = Math.min(255, lzwData.length - offset);
+      out.write(length);
+      out.write(lzwData, offset, length);
+    }
+    out.write(0);
+    return this;
+  }
+
+  byte[] build() {
+    out.write(0x3b);
+    return out.toByteArray();
+  }
+
+  /**
+   * LZW-encode pixels the way GIF encoders do.
+   *
+   * @param pixels        The color indices to encode, each less than 2^minCodeSize
+   * @param clearWhenFull Whether to send a clear code when the code table is full. Otherwise the
+   *                      table stays full, and its existing codes keep being used.
+   * @param endOfInfo     Whether to finish with an end of information code
+   */
+  static byte[] encodeLzw(byte[] pixels, int minCodeSize, boolean clearWhenFull, boolean endOfInfo) {
+    BitWriter writer = new BitWriter();
+    int clear = 1 << minCodeSize;
+    int endOfInformation = clear + 1;
+
+    Map<Integer, Integer> table = new HashMap<>();
+    int available = clear + 2;
+    int codeSize = minCodeSize + 1;
+    writer.write(clear, codeSize);
+
+    if (pixels.length > 0) {
+      int prefix = pixels[0] & 0xff;
+      for (int i = 1; i < pixels.length; i++) {
+        int pixel = pixels[i] & 0xff;
+        Integer code = table.get((prefix << 8) | pixel);
+        if (code != null) {
+          prefix = code;
+          continue;
+        }
+
+        writer.write(prefix, codeSize);
+        if (available < MAX_CODE_COUNT) {
+          table.put((prefix << 8) | pixel, available++);
+          // The decoder adds each code one step later, so grow once the last code added needs it.
+          if (available - 1 == (1 << codeSize) && codeSize < 12) {
+            codeSize++;
+          }
+        } else if (clearWhenFull) {
+          writer.write(clear, codeSize);
+          table.clear();
+          available = clear + 2;
+          codeSize = minCodeSize + 1;
+        }
+        prefix = pixel;
+      }
+      writer.write(prefix, codeSize);
+    }
+
+    if (endOfInfo) {
+      writer.write(endOfInformation, codeSize);
+    }
+    return writer.toByteArray();
+  }
+
+  private void writeShort(int value) {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  private void writeString(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      out.write(value.charAt(i));
+    }
+  }
+
+  private static class BitWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int buffer;
+    private int bits;
+
+    void write(int code, int codeSize) {
+      buffer |= code << bits;
+      bits += codeSize;
+      while (bits >= 8) {
+        out.write(buffer & 0xff);
+        buffer >>>= 8;
+        bits -= 8;
+      }
+    }
+
+    byte[] toByteArray() {
+      if (bits > 0) {
+        out.write(buffer & 0xff);
+        buffer = 0;
+        bits = 0;
+      }
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that compositing only the dirty area of each frame gives exactly the same frames as
+ * compositing the whole canvas, for every combination of disposal methods and transparency.
+ */
+public class GifDecoderCompositingTest {
+  private static final int COLOR_BITS = 4;
+  private static final int[] DISPOSALS = {
+    GifImage.DISPOSAL_NONE,
+    GifImage.DISPOSAL_BACKGROUND,
+    GifImage.DISPOSAL_PREVIOUS,
+  };
+
+  private static class FrameSpec {
+    final int x, y, width, height;
+    final int dispose;
+    final int transIndex;
+    final byte[] pixels;
+
+    FrameSpec(int x, int y, int width, int height, int dispose, int transIndex, byte[] pixels) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.dispose = dispose;
+      this.transIndex = transIndex;
+      this.pixels = pixels;
+    }
+  }
+
+  /**
+   * Composites every frame over the whole canvas, saving the whole canvas for frames which dispose
+   * to the previous one.
+   */
+  private static class ReferenceCompositor {
+    private final int width;
+    private final int height;
+    private final int[] canvas;
+    private FrameSpec previous;
+    private int[] saved;
+
+    ReferenceCompositor(int width, int height) {
+      this.width = width;
+      this.height = height;
+      canvas = new int[width * height];
+    }
+
+    int[] draw(FrameSpec frame) {
+      if (previous != null && previous.dispose == GifImage.DISPOSAL_BACKGROUND) {
+        // Like GifDecoder, the background is transparent if the frame drawn over it has transparency.
+        fill(previous, frame.transIndex >= 0 ? 0 : GifBuilder.color(0));
+      } else if (previous != null && previous.dispose == GifImage.DISPOSAL_PREVIOUS) {
+        System.arraycopy(saved, 0, canvas, 0, canvas.length);
+      }
+
+      if (frame.dispose == GifImage.DISPOSAL_PREVIOUS) {
+        saved = canvas.clone();
+      }
+
+      for (int y = 0; y < frame.height; y++) {
+        for (int x = 0; x < frame.width; x++) {
+          int index = frame.pixels[y * frame.width + x];
+          int canvasX = frame.x + x;
+          int canvasY = frame.y + y;
+          if (index != frame.transIndex && canvasX < width && canvasY < height) {
+            canvas[canvasY * width + canvasX] = GifBuilder.color(index);
+          }
+        }
+      }
+
+      previous = frame;
+      return canvas;
+    }
+
+    private void fill(FrameSpec frame, int color) {
+      for (int y = frame.y; y < Math.min(height, frame.y + frame.height); y++) {
+        for (int x = frame.x; x < Math.min(width, frame.x + frame.width); x++) {
+          canvas[y * width + x] = color;
+        }
+      }
+    }
+  }
+
+  private static FrameSpec randomFrame(Random random, int width, int height, int dispose) {
+    // Mostly small frames, some of them hanging over the edge of the canvas.
+    int x = random.nextInt(width);
+    int y = random.nextInt(height);
+    int frameWidth = 1 + random.nextInt(random.nextInt(4) == 0 ? width : Math.max(1, width / 4));
+    int frameHeight = 1 + random.nextInt(random.nextInt(4) == 0 ? height : Math.max(1, height / 4));
+    int transIndex = random.nextBoolean() ? random.nextInt(1 << COLOR_BITS) : -1;
+    return new FrameSpec(x, y, frameWidth, frameHeight, dispose, transIndex,
+      randomPixels(random, frameWidth * frameHeight));
+  }
+
+  private static byte[] randomPixels(Random random, int count) {
+    byte[] pixels = new byte[count];
+    for (int i = 0; i < count; i++) {
+      pixels[i] = (byte) random.nextInt(1 << COLOR_BITS);
+    }
+    return pixels;
+  }
+
+  private static GifImage buildImage(int width, int height, List<FrameSpec> frames) {
+    GifBuilder builder = new GifBuilder(width, height, COLOR_BITS).loopCount(0);
+    for (FrameSpec frame : frames) {
+      builder.frame(frame.x, frame.y, frame.width, frame.height, 100, frame.dispose, frame.transIndex,
+        COLOR_BITS, GifBuilder.encodeLzw(frame.pixels, COLOR_BITS, true, true));
+    }
+
+    GifImage image = GifImage.read(ByteBuffer.wrap(builder.build()));
+    assertEquals(GifDecoder.STATUS_OK, image.getStatus());
+    assertEquals(frames.size(), image.getFrameCount());
+    return image;
+  }
+
+  /**
+   * Get every sampleSize-th pixel of every sampleSize-th row, as GifDecoder subsamples.
+   */
+  private static int[] sample(int[] canvas, int width, int height, int sampleSize) {
+    int sampledWidth = (width + sampleSize - 1) / sampleSize;
+    int sampledHeight = (height + sampleSize - 1) / sampleSize;
+    int[] sampled = new int[sampledWidth * sampledHeight];
+    for (int y = 0; y < sampledHeight; y++) {
+      for (int x = 0; x < sampledWidth; x++) {
+        sampled[y * sampledWidth + x] = canvas[y * sampleSize * width + x * sampleSize];
+      }
+    }
+    return sampled;
+  }
+
+  private static void assertCompositesLikeReference(int width, int height, List<FrameSpec> frames, int sampleSize) {
+    GifImage image = buildImage(width, height, frames);
+    CanvasGifDecoder decoder = new CanvasGifDecoder(image);
+    if (sampleSize > 1) {
+      decoder.setTargetSize(width / sampleSize, height / sampleSize);
+    }
+    assertEquals(sampleSize, decoder.sampleSize);
+    int sampledWidth = decoder.getWidth();
+
+    // Twice through, so that the first frame is also drawn over the disposal of the last.
+    ReferenceCompositor reference = new ReferenceCompositor(width, height);
+    for (int i = 0; i < frames.size() * 2; i++) {
+      FrameSpec frame = frames.get(i % frames.size());
+      int[] expected = sample(reference.draw(frame), width, height, sampleSize);
+
+      decoder.advance();
+      int[] actual = decoder.getNextCanvas();
+      assertEquals(GifDecoder.STATUS_OK, decoder.status);
+
+      if (!Arrays.equals(expected, actual)) {
+        for (int p = 0; p < expected.length; p++) {
+          if (expected[p] != actual[p]) {
+            fail("Frame " + i + " (dispose " + frame.dispose + ", sample size " + sampleSize + ") differs at "
+              + (p % sampledWidth) + "," + (p / sampledWidth) + ": expected "
+              + Integer.toHexString(expected[p]) + " but was " + Integer.toHexString(actual[p]));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEveryDisposalPairMatchesReference() {
+    // Each disposal method followed by each other one, with and without transparency.
+    Random random = new Random(1);
+    List<FrameSpec> frames = new ArrayList<>();
+    frames.add(randomFrame(random, 40, 30, GifImage.DISPOSAL_NONE));
+    for (int first : DISPOSALS) {
+      for (int second : DISPOSALS) {
+        frames.add(randomFrame(random, 40, 30, first));
+        frames.add(randomFrame(random, 40, 30, second));
+      }
+    }
+
+    for (int sampleSize : new int[]{1, 2}) {
+      assertCompositesLikeReference(40, 30, frames, sampleSize);
+    }
+  }
+
+  @Test
+  public void testConsecutiveDisposePreviousFramesMatchReference() {
+    // Frames which dispose to previous are restored one after another, each over the last's area.
+    List<FrameSpec> frames = new ArrayList<>();
+    Random random = new Random(2);
+    frames.add(new FrameSpec(0, 0, 32, 32, GifImage.DISPOSAL_NONE, -1, randomPixels(random, 32 * 32)));
+    for (int i = 0; i < 4; i++) {
+      byte[] pixels = new byte[12 * 12];
+      Arrays.fill(pixels, (byte) (i + 1));
+      frames.add(new FrameSpec(i * 6, i * 4, 12, 12, GifImage.DISPOSAL_PREVIOUS, i % 2 == 0 ? 2 : -1, pixels));
+    }
+    frames.add(new FrameSpec(4, 4, 8, 8, GifImage.DISPOSAL_BACKGROUND, -1, new byte[8 * 8]));
+
+    for (int sampleSize : new int[]{1, 2, 4}) {
+      assertCompositesLikeReference(32, 32, frames, sampleSize);
+    }
+  }
+
+  @Test
+  public void testRandomSequencesMatchReference() {
+    Random random = new Random(3);
+    for (int sequence = 0; sequence < 200; sequence++) {
+      // At least twice the largest sample size, so that it is always used.
+      int width = 8 + random.nextInt(80);
+      int height = 8 + random.nextInt(80);
+      int frameCount = 1 + random.nextInt(12);
+
+      List<FrameSpec> frames = new ArrayList<>();
+      for (int i = 0; i < frameCount; i++) {
+        frames.add(randomFrame(random, width, height, DISPOSALS[random.nextInt(DISPOSALS.length)]));
+      }
+
+      int sampleSize = 1 << random.nextInt(3);
+      assertCompositesLikeReference(width, height, frames, sampleSize);
+    }
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link GifDecoder} decodes LZW image data exactly, both for streams written by an
+ * encoder and for arbitrary ones.
+ */
+public class GifDecoderLzwTest {
+  private static final int[][] SIZES = {{1, 1}, {7, 3}, {16, 16}, {300, 200}};
+
+  private static byte[] randomPixels(Random random, int count, int colorBits) {
+    byte[] pixels = new byte[count];
+    for (int i = 0; i < count; i++) {
+      pixels[i] = (byte) random.nextInt(1 << colorBits);
+    }
+    return pixels;
+  }
+
+  private static int minCodeSize(int colorBits) {
+    return Math.max(2, colorBits);
+  }
+
+  private static byte[] singleFrameGif(int width, int height, int colorBits, int minCodeSize, byte[] lzwData) {
+    return new GifBuilder(width, height, colorBits)
+      .frame(0, 0, width, height, 100, GifImage.DISPOSAL_NONE, minCodeSize, lzwData)
+      .build();
+  }
+
+  /**
+   * Decode the image data of every frame of a GIF in turn, with a single decoder.
+   */
+  private static byte[][] decodeFrames(byte[] gif) {
+    GifImage image = GifImage.read(ByteBuffer.wrap(gif));
+    assertEquals(GifDecoder.STATUS_OK, image.getStatus());
+
+    GifDecoder decoder = new GifDecoder(image);
+    byte[][] frames = new byte[image.getFrameCount()][];
+    for (int i = 0; i < frames.length; i++) {
+      GifImage.Frame frame = image.getFrame(i);
+      decoder.decodeBitmapData(frame);
+      frames[i] = Arrays.copyOf(decoder.mainPixels, frame.iw * frame.ih);
+    }
+    return frames;
+  }
+
+  private static void assertRoundTrips(int width, int height, int colorBits, byte[] pixels, boolean clearWhenFull) {
+    int minCodeSize = minCodeSize(colorBits);
+    byte[] lzwData = GifBuilder.encodeLzw(pixels, minCodeSize, clearWhenFull, true);
+    byte[][] frames = decodeFrames(singleFrameGif(width, height, colorBits, minCodeSize, lzwData));
+
+    assertEquals(1, frames.length);
+    assertArrayEquals("Pixels differ for a " + width + "x" + height + " image with " + colorBits + " bit colors",
+      pixels, frames[0]);
+  }
+
+  @Test
+  public void testRandomPixelsRoundTrip() {
+    Random random = new Random(1);
+    for (int[] size : SIZES) {
+      for (int colorBits : new int[]{1, 2, 4, 8}) {
+        byte[] pixels = randomPixels(random, size[0] * size[1], colorBits);
+        assertRoundTrips(size[0], size[1], colorBits, pixels, true);
+      }
+    }
+  }
+
+  @Test
+  public void testLongRunsRoundTrip() {
+    // Runs of a single color are encoded with codes which aren't in the decoder's table yet.
+    int width = 640;
+    int height = 480;
+    byte[] pixels = new byte[width * height];
+    Arrays.fill(pixels, (byte) 3);
+    assertRoundTrips(width, height, 2, pixels, true);
+
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) ((i / 1000) % 4);
+    }
+    assertRoundTrips(width, height, 2, pixels, true);
+  }
+
+  @Test
+  public void testPatternsRoundTrip() {
+    int width = 300;
+    int height = 200;
+    byte[] pixels = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels[y * width + x] = (byte) ((x / 8 + y / 8) % 2 == 0 ? x % 256 : y % 256);
+      }
+    }
+    assertRoundTrips(width, height, 8, pixels, true);
+  }
+
+  @Test
+  public void testFullCodeTableWithClearRoundTrips() {
+    Random random = new Random(2);
+    byte[] pixels = randomPixels(random, 512 * 512, 8);
+    assertRoundTrips(512, 512, 8, pixels, true);
+  }
+
+  @Test
+  public void testFullCodeTableWithoutClearRoundTrips() {
+    // Once the table is full, encoders may keep using it without a clear code.
+    Random random = new Random(3);
+    byte[] pixels = randomPixels(random, 512 * 512, 4);
+    assertRoundTrips(512, 512, 4, pixels, false);
+  }
+
+  @Test
+  public void testMissingPixelsAreCleared() {
+    int width = 64;
+    int height = 64;
+    Random random = new Random(4);
+    byte[] pixels = randomPixels(random, width * height, 8);
+    for (int i = 0; i < pixels.length; i++) {
+      // Never 0, so that leftovers from the first frame would show.
+      pixels[i] |= 1;
+    }
+
+    // The second frame ends early, with and without an end of information code.
+    int pixelCount = 1000;
+    byte[] partial = Arrays.copyOf(pixels, pixelCount);
+    byte[] gif = new GifBuilder(width, height, 8)
+      .frame(0, 0, width, height, 100, GifImage.DISPOSAL_NONE, 8, GifBuilder.encodeLzw(pixels, 8, true, true))
+      .frame(0, 0, width, height, 100, GifImage.DISPOSAL_NONE, 8, GifBuilder.encodeLzw(partial, 8, true, true))
+      .frame(0, 0, width, height, 100, GifImage.DISPOSAL_NONE, 8, GifBuilder.encodeLzw(partial, 8, true, false))
+      .build();
+
+    byte[] expected = Arrays.copyOf(partial, width * height);
+    byte[][] frames = decodeFrames(gif);
+    assertArrayEquals(pixels, frames[0]);
+    assertArrayEquals(expected, frames[1]);
+    assertArrayEquals(expected, frames[2]);
+  }
+
+  @Test
+  public void testInvalidMinimumCodeSizeDecodesNothing() {
+    byte[] pixels = randomPixels(new Random(5), 16 * 16, 2);
+    byte[] lzwData = GifBuilder.encodeLzw(pixels, 2, true, true);
+    for (int minCodeSize : new int[]{0, 12, 255}) {
+      byte[][] frames = decodeFrames(singleFrameGif(16, 16, 2, minCodeSize, lzwData));
+      assertArrayEquals(new byte[16 * 16], frames[0]);
+    }
+  }
+
+  @Test
+  public void testArbitraryCodeStreamsMatchReference() {
+    Random random = new Random(6);
+    for (int i = 0; i < 2000; i++) {
+      int width = 1 + random.nextInt(64);
+      int height = 1 + random.nextInt(64);
+      // The GIF spec doesn't allow a minimum code size of 1, not even for images with two colors.
+      int minCodeSize = 2 + random.nextInt(10);
+      int colorBits = Math.min(8, minCodeSize);
+
+      // Mostly valid streams with a few bytes changed, so that decoding gets some way in.
+      byte[] lzwData;
+      if (random.nextBoolean()) {
+        lzwData = GifBuilder.encodeLzw(randomPixels(random, width * height, colorBits), minCodeSize, random.nextBoolean(), true);
+        for (int j = 1 + random.nextInt(4); j > 0 && lzwData.length > 0; j--) {
+          lzwData[random.nextInt(lzwData.length)] = (byte) random.nextInt(256);
+        }
+      } else {
+        lzwData = new byte[random.nextInt(512)];
+        random.nextBytes(lzwData);
+      }
+
+      byte[][] frames = decodeFrames(singleFrameGif(width, height, colorBits, minCodeSize, lzwData));
+      byte[] expected = ReferenceLzwDecoder.decode(lzwData, minCodeSize, width * height);
+      assertArrayEquals("Stream " + i + " decoded differently from the reference", expected, frames[0]);
+    }
+  }
+}
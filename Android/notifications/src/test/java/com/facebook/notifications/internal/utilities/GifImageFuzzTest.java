@@ -0,0 +1,179 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads and decodes corrupted GIFs, checking that nothing throws, that the limits on what is read
+ * always hold, and that whatever frames are read still decode exactly like a reference decoder.
+ */
+public class GifImageFuzzTest {
+  private static final int ITERATIONS = 3000;
+
+  private static byte[] randomPixels(Random random, int count, int colorBits) {
+    byte[] pixels = new byte[count];
+    for (int i = 0; i < count; i++) {
+      pixels[i] = (byte) random.nextInt(1 << colorBits);
+    }
+    return pixels;
+  }
+
+  private static List<byte[]> createSeeds(Random random) {
+    List<byte[]> seeds = new ArrayList<>();
+
+    seeds.add(new GifBuilder(1, 1, 1)
+      .frame(0, 0, 1, 1, 0, GifImage.DISPOSAL_NONE, 2, GifBuilder.encodeLzw(new byte[1], 2, true, true))
+      .build());
+
+    GifBuilder animation = new GifBuilder(48, 32, 4).loopCount(0);
+    int[] disposals = {GifImage.DISPOSAL_NONE, GifImage.DISPOSAL_BACKGROUND, GifImage.DISPOSAL_PREVIOUS};
+    for (int i = 0; i < 3; i++) {
+      int x = i * 8;
+      int y = i * 4;
+      byte[] pixels = randomPixels(random, (48 - x) * (32 - y), 4);
+      animation.frame(x, y, 48 - x, 32 - y, 50, disposals[i], 4, GifBuilder.encodeLzw(pixels, 4, true, true));
+    }
+    seeds.add(animation.build());
+
+    byte[] large = randomPixels(random, 200 * 150, 8);
+    seeds.add(new GifBuilder(200, 150, 8)
+      .frame(0, 0, 200, 150, 100, GifImage.DISPOSAL_NONE, 8, GifBuilder.encodeLzw(large, 8, false, true))
+      .build());
+
+    return seeds;
+  }
+
+  private static byte[] mutate(Random random, byte[] seed) {
+    byte[] data = seed.clone();
+
+    // Most of what the parser trusts is in the first few dozen bytes, so favor those.
+    int mutations = 1 + random.nextInt(8);
+    for (int i = 0; i < mutations; i++) {
+      int range = random.nextBoolean() ? Math.min(64, data.length) : data.length;
+      data[random.nextInt(range)] = (byte) random.nextInt(256);
+    }
+
+    if (random.nextInt(4) == 0) {
+      data = Arrays.copyOf(data, random.nextInt(data.length));
+    }
+    return data;
+  }
+
+  /**
+   * Gather a frame's LZW data from the file, the way it is laid out in sub-blocks.
+   */
+  private static byte[] readFrameData(byte[] gif, GifImage.Frame frame) {
+    int position = frame.bufferFrameStart + 1;
+    byte[] data = new byte[0];
+    while (position < gif.length) {
+      int blockSize = gif[position++] & 0xff;
+      if (blockSize == 0) {
+        break;
+      }
+      int offset = data.length;
+      data = Arrays.copyOf(data, offset + blockSize);
+      System.arraycopy(gif, position, data, offset, blockSize);
+      position += blockSize;
+    }
+    return data;
+  }
+
+  private static void checkImage(byte[] gif, int iteration) {
+    GifImage image = GifImage.read(ByteBuffer.wrap(gif));
+    assertTrue("Unexpected status " + image.getStatus() + " at iteration " + iteration,
+      image.getStatus() == GifDecoder.STATUS_OK || image.getStatus() == GifDecoder.STATUS_FORMAT_ERROR);
+    if (image.getFrameCount() == 0) {
+      return;
+    }
+
+    assertTrue((long) image.getWidth() * image.getHeight() <= GifImage.MAX_PIXEL_COUNT);
+    assertTrue(image.getFrameCount() <= GifImage.MAX_FRAME_COUNT);
+
+    GifDecoder decoder = new GifDecoder(image);
+    decoder.setTargetSize(100, 100);
+    decoder.getByteCount();
+
+    long loopPixelCount = 0;
+    for (int i = 0; i < image.getFrameCount(); i++) {
+      GifImage.Frame frame = image.getFrame(i);
+      int pixelCount = frame.iw * frame.ih;
+      assertTrue(pixelCount <= GifImage.MAX_PIXEL_COUNT);
+      loopPixelCount += pixelCount;
+
+      decoder.decodeBitmapData(frame);
+      byte[] expected = ReferenceLzwDecoder.decode(readFrameData(gif, frame), gif[frame.bufferFrameStart] & 0xff, pixelCount);
+      assertArrayEquals("Frame " + i + " at iteration " + iteration + " decoded differently from the reference",
+        expected, Arrays.copyOf(decoder.mainPixels, pixelCount));
+    }
+    assertTrue(loopPixelCount <= GifImage.MAX_LOOP_PIXEL_COUNT);
+
+    decoder.recycle();
+  }
+
+  @Test
+  public void testSeedsDecode() {
+    for (byte[] seed : createSeeds(new Random(1))) {
+      GifImage image = GifImage.read(ByteBuffer.wrap(seed));
+      assertTrue(image.getStatus() == GifDecoder.STATUS_OK);
+      assertTrue(image.getFrameCount() > 0);
+      checkImage(seed, -1);
+    }
+  }
+
+  @Test
+  public void testCorruptedImages() {
+    Random random = new Random(2);
+    List<byte[]> seeds = createSeeds(random);
+    for (int i = 0; i < ITERATIONS; i++) {
+      checkImage(mutate(random, seeds.get(random.nextInt(seeds.size()))), i);
+    }
+  }
+
+  @Test
+  public void testRandomBytes() {
+    Random random = new Random(3);
+    for (int i = 0; i < ITERATIONS; i++) {
+      byte[] data = new byte[random.nextInt(256)];
+      random.nextBytes(data);
+      if (data.length >= 6 && random.nextBoolean()) {
+        // Get past the signature check, so the rest of the parser sees random data.
+        data[0] = 'G';
+        data[1] = 'I';
+        data[2] = 'F';
+      }
+      checkImage(data, i);
+    }
+  }
+
+  @Test
+  public void testEmptyAndNullData() {
+    assertTrue(GifImage.read(ByteBuffer.allocate(0)).getFrameCount() == 0);
+    assertTrue(GifImage.read(null).getStatus() == GifDecoder.STATUS_OPEN_ERROR);
+  }
+}
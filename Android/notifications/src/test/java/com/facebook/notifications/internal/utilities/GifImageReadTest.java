@@ -0,0 +1,119 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that reading a GIF only indexes its frames, so that the first frame can be shown without
+ * decoding all of the others first.
+ */
+public class GifImageReadTest {
+  private static final int WIDTH = 160;
+  private static final int HEIGHT = 120;
+  private static final int FRAME_COUNT = 200;
+  private static final int COLOR_BITS = 8;
+
+  private static byte[] framePixels(int frame) {
+    byte[] pixels = new byte[WIDTH * HEIGHT];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        pixels[y * WIDTH + x] = (byte) ((x + y + frame) / 4);
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Build an animation, with the LZW data of one frame replaced by garbage. The sub-block lengths
+   * are left intact, so only decoding that frame can tell that anything is wrong.
+   */
+  private static byte[] buildAnimation(int corruptFrame) {
+    Random random = new Random(1);
+    GifBuilder builder = new GifBuilder(WIDTH, HEIGHT, COLOR_BITS).loopCount(0);
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      byte[] lzwData = GifBuilder.encodeLzw(framePixels(i), COLOR_BITS, true, true);
+      int minCodeSize = COLOR_BITS;
+      if (i == corruptFrame) {
+        random.nextBytes(lzwData);
+        minCodeSize = 0xff;
+      }
+      builder.frame(0, 0, WIDTH, HEIGHT, 40, GifImage.DISPOSAL_NONE, minCodeSize, lzwData);
+    }
+    return builder.build();
+  }
+
+  private static int[] expectedCanvas(int frame) {
+    byte[] pixels = framePixels(frame);
+    int[] canvas = new int[pixels.length];
+    for (int i = 0; i < pixels.length; i++) {
+      canvas[i] = GifBuilder.color(pixels[i] & 0xff);
+    }
+    return canvas;
+  }
+
+  @Test
+  public void testReadDoesNotDecodeFrames() {
+    byte[] gif = buildAnimation(FRAME_COUNT - 10);
+
+    GifImage image = GifImage.read(ByteBuffer.wrap(gif));
+    assertEquals(GifDecoder.STATUS_OK, image.getStatus());
+    assertEquals(FRAME_COUNT, image.getFrameCount());
+
+    CanvasGifDecoder decoder = new CanvasGifDecoder(image);
+    decoder.advance();
+    assertArrayEquals(expectedCanvas(0), decoder.getNextCanvas());
+    assertEquals(GifDecoder.STATUS_OK, decoder.status);
+  }
+
+  @Test
+  public void testTimeToFirstFrame() {
+    byte[] gif = buildAnimation(-1);
+
+    // Once to warm up, and once to measure.
+    long firstFrameNanos = 0;
+    for (int i = 0; i < 2; i++) {
+      long start = System.nanoTime();
+      CanvasGifDecoder decoder = new CanvasGifDecoder(GifImage.read(ByteBuffer.wrap(gif)));
+      decoder.advance();
+      int[] canvas = decoder.getNextCanvas();
+      firstFrameNanos = System.nanoTime() - start;
+
+      assertArrayEquals(expectedCanvas(0), canvas);
+    }
+
+    CanvasGifDecoder decoder = new CanvasGifDecoder(GifImage.read(ByteBuffer.wrap(gif)));
+    long start = System.nanoTime();
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      decoder.advance();
+      decoder.getNextCanvas();
+    }
+    long allFramesNanos = System.nanoTime() - start;
+
+    System.out.println(String.format(
+      "GifImage: read and first frame of %d %dx%d frames in %.2fms, decoding every frame takes %.2fms",
+      FRAME_COUNT, WIDTH, HEIGHT, firstFrameNanos / 1e6, allFramesNanos / 1e6));
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A straightforward GIF LZW decoder, which keeps every string in its table as a separate array.
+ * It is slow, but simple enough to be obviously correct, and handles bad code streams the same way
+ * {@link GifDecoder} does: decoding stops at the first invalid code, and missing pixels are 0.
+ */
+final class ReferenceLzwDecoder {
+  private static final int MAX_CODE_COUNT = 4096;
+
+  private ReferenceLzwDecoder() {
+  }
+
+  static byte[] decode(byte[] data, int minCodeSize, int pixelCount) {
+    byte[] pixels = new byte[pixelCount];
+    if (minCodeSize < 1 || minCodeSize > 11) {
+      return pixels;
+    }
+
+    int clear = 1 << minCodeSize;
+    int endOfInformation = clear + 1;
+    List<byte[]> table = new ArrayList<>();
+    resetTable(table, clear);
+    int codeSize = minCodeSize + 1;
+    // The code size grows each time the table reaches the next power of two. Usually that is
+    // 1 << codeSize, but with a minimum code size of 1 the table starts out that large already.
+    int growAt = Integer.highestOneBit(clear + 2) * 2;
+    byte[] previous = null;
+
+    int pixel = 0;
+    long bitPosition = 0;
+    while (pixel < pixelCount && bitPosition + codeSize <= data.length * 8L) {
+      int code = readCode(data, bitPosition, codeSize);
+      bitPosition += codeSize;
+
+      if (code == clear) {
+        resetTable(table, clear);
+        codeSize = minCodeSize + 1;
+        growAt = Integer.highestOneBit(clear + 2) * 2;
+        previous = null;
+        continue;
+      }
+      if (code > table.size() || code == endOfInformation) {
+        break;
+      }
+
+      byte[] string;
+      if (previous == null) {
+        if (code >= clear) {
+          break;
+        }
+        string = table.get(code);
+      } else if (code == table.size()) {
+        string = append(previous, previous[0]);
+      } else {
+        string = table.get(code);
+      }
+
+      int length = Math.min(string.length, pixelCount - pixel);
+      System.arraycopy(string, 0, pixels, pixel, length);
+      pixel += length;
+
+      if (previous != null && table.size() < MAX_CODE_COUNT) {
+        table.add(append(previous, string[0]));
+        if (table.size() == growAt && codeSize < 12) {
+          codeSize++;
+          growAt *= 2;
+        }
+      }
+      previous = string;
+    }
+    return pixels;
+  }
+
+  private static void resetTable(List<byte[]> table, int clear) {
+    table.clear();
+    for (int i = 0; i < clear; i++) {
+      table.add(new byte[]{(byte) i});
+    }
+    // The clear and end of information codes have no strings.
+    table.add(null);
+    table.add(null);
+  }
+
+  private static int readCode(byte[] data, long bitPosition, int codeSize) {
+    int code = 0;
+    for (int i = 0; i < codeSize; i++) {
+      long bit = bitPosition + i;
+      if ((data[(int) (bit >> 3)] & (1 << (bit & 7))) != 0) {
+        code |= 1 << i;
+      }
+    }
+    return code;
+  }
+
+  private static byte[] append(byte[] string, byte pixel) {
+    byte[] appended = Arrays.copyOf(string, string.length + 1);
+    appended[string.length] = pixel;
+    return appended;
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AnimationSchedulerTest {
+  /**
+   * Runs display frames only when the test says so.
+   */
+  private static class ManualTicker implements AnimationScheduler.Ticker {
+    private AnimationScheduler scheduler;
+    private boolean framePosted;
+    private long frameTimeNanos;
+
+    @Override
+    public void postFrame() {
+      framePosted = true;
+    }
+
+    /**
+     * Run the posted display frame, if there is one.
+     */
+    void tick() {
+      frameTimeNanos += 16666667L;
+      if (framePosted) {
+        framePosted = false;
+        scheduler.onFrame(frameTimeNanos);
+      }
+    }
+  }
+
+  /**
+   * Decodes a frame on every display frame, like a GIF which is decoded in time.
+   */
+  private static class DecodingClient implements AnimationScheduler.Client {
+    private int frames;
+    private int resumes;
+
+    @Override
+    public void onAnimationFrame(long frameTimeNanos) {
+      frames++;
+      AnimationScheduler.decode(new Runnable() {
+        @Override
+        public void run() {
+        }
+      });
+    }
+
+    @Override
+    public void onAnimationResumed() {
+      resumes++;
+    }
+  }
+
+  private static ManualTicker createTicker() {
+    ManualTicker ticker = new ManualTicker();
+    ticker.scheduler = new AnimationScheduler(ticker);
+    return ticker;
+  }
+
+  /**
+   * Wait for every decoding task queued so far to finish.
+   */
+  private static void finishDecoding() throws InterruptedException {
+    final CountDownLatch finished = new CountDownLatch(1);
+    AnimationScheduler.decode(new Runnable() {
+      @Override
+      public void run() {
+        finished.countDown();
+      }
+    });
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNoDecodingWhilePaused() throws InterruptedException {
+    ManualTicker ticker = createTicker();
+    AnimationScheduler scheduler = ticker.scheduler;
+    DecodingClient client = new DecodingClient();
+
+    scheduler.add(client);
+    long tasksBefore = AnimationScheduler.getDecodeTaskCount();
+    for (int i = 0; i < 10; i++) {
+      ticker.tick();
+    }
+    assertEquals(10, client.frames);
+    assertEquals(tasksBefore + 10, AnimationScheduler.getDecodeTaskCount());
+    finishDecoding();
+
+    // A display frame is still posted when pausing, it must not animate anything either.
+    scheduler.setPaused(true);
+    assertTrue(scheduler.isPaused());
+    long pausedTasks = AnimationScheduler.getDecodeTaskCount();
+    long pausedCpuTime = AnimationScheduler.getDecodeCpuTimeMillis();
+    for (int i = 0; i < 10; i++) {
+      ticker.tick();
+    }
+    assertFalse(ticker.framePosted);
+    assertEquals(10, client.frames);
+    assertEquals(pausedTasks, AnimationScheduler.getDecodeTaskCount());
+    assertEquals(pausedCpuTime, AnimationScheduler.getDecodeCpuTimeMillis());
+
+    scheduler.setPaused(false);
+    assertEquals(1, client.resumes);
+    for (int i = 0; i < 10; i++) {
+      ticker.tick();
+    }
+    assertEquals(20, client.frames);
+    assertEquals(pausedTasks + 10, AnimationScheduler.getDecodeTaskCount());
+    finishDecoding();
+  }
+
+  @Test
+  public void testClientsAddedWhilePausedWaitForResume() {
+    ManualTicker ticker = createTicker();
+    AnimationScheduler scheduler = ticker.scheduler;
+    DecodingClient client = new DecodingClient();
+
+    scheduler.setPaused(true);
+    scheduler.add(client);
+    assertFalse(ticker.framePosted);
+
+    scheduler.setPaused(false);
+    assertTrue(ticker.framePosted);
+    ticker.tick();
+    assertEquals(1, client.frames);
+  }
+
+  @Test
+  public void testFramesStopOnceNoClientsRemain() {
+    ManualTicker ticker = createTicker();
+    AnimationScheduler scheduler = ticker.scheduler;
+    DecodingClient client = new DecodingClient();
+
+    scheduler.add(client);
+    ticker.tick();
+    scheduler.remove(client);
+    ticker.tick();
+    assertFalse(ticker.framePosted);
+    assertEquals(1, client.frames);
+  }
+}
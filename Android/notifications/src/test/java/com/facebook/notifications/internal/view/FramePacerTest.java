@@ -0,0 +1,141 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FramePacerTest {
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  private static long millis(long ms) {
+    return ms * NANOS_PER_MILLI;
+  }
+
+  @Test
+  public void testShortDelaysAreClampedToDefault() {
+    assertEquals(100, FramePacer.clampDelay(0));
+    assertEquals(100, FramePacer.clampDelay(10));
+    assertEquals(11, FramePacer.clampDelay(11));
+    assertEquals(40, FramePacer.clampDelay(40));
+  }
+
+  @Test
+  public void testFrameWithShortDelayIsShownFor100ms() {
+    FramePacer pacer = new FramePacer();
+    assertTrue(pacer.isFrameDue(0));
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(0, 10));
+
+    assertFalse(pacer.isFrameDue(millis(99)));
+    assertTrue(pacer.isFrameDue(millis(100)));
+  }
+
+  @Test
+  public void testTimelineDoesNotDrift() {
+    // 30ms frames on a 60Hz display, always decoded in time.
+    FramePacer pacer = new FramePacer();
+    long vsyncNanos = 16666667L;
+    long firstShown = -1;
+    long lastShown = -1;
+    int shown = 0;
+
+    for (int vsync = 0; shown < 1000; vsync++) {
+      long now = vsync * vsyncNanos;
+      if (pacer.isFrameDue(now) && pacer.onFrameReady(now, 30) == FramePacer.ACTION_SHOW) {
+        if (firstShown < 0) {
+          firstShown = now;
+        }
+        lastShown = now;
+        shown++;
+      }
+    }
+
+    // Each frame is late by at most one display frame, which never adds up.
+    long elapsed = lastShown - firstShown;
+    assertTrue("Timeline drifted: " + elapsed, Math.abs(elapsed - millis(999 * 30)) <= vsyncNanos);
+  }
+
+  @Test
+  public void testShortStallSkipsToCatchUp() {
+    FramePacer pacer = new FramePacer();
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(0, 50));
+
+    // The frame due at 50ms was only over at 100ms, so it's skipped for the one due at 100ms.
+    assertEquals(FramePacer.ACTION_SKIP, pacer.onFrameReady(millis(120), 50));
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(millis(120), 50));
+
+    // The timeline carries on from when that frame was due, not from when it was shown.
+    assertFalse(pacer.isFrameDue(millis(149)));
+    assertTrue(pacer.isFrameDue(millis(150)));
+  }
+
+  @Test
+  public void testLongStallSkipsAtMostFiveFramesThenRestartsTimeline() {
+    FramePacer pacer = new FramePacer();
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(0, 50));
+
+    long now = millis(1000);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(FramePacer.ACTION_SKIP, pacer.onFrameReady(now, 50));
+    }
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(now, 50));
+
+    // The timeline restarts from the frame that was shown.
+    assertFalse(pacer.isFrameDue(millis(1049)));
+    assertTrue(pacer.isFrameDue(millis(1050)));
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(millis(1050), 50));
+  }
+
+  @Test
+  public void testResetRestartsTimeline() {
+    FramePacer pacer = new FramePacer();
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(0, 50));
+    assertFalse(pacer.isFrameDue(millis(10)));
+
+    pacer.reset();
+
+    // The next frame is due straight away, and starts a new timeline instead of being skipped.
+    assertTrue(pacer.isFrameDue(millis(10)));
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(millis(5000), 50));
+    assertFalse(pacer.isFrameDue(millis(5049)));
+    assertTrue(pacer.isFrameDue(millis(5050)));
+  }
+
+  @Test
+  public void testResetClearsSkippedFrames() {
+    FramePacer pacer = new FramePacer();
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(0, 50));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(FramePacer.ACTION_SKIP, pacer.onFrameReady(millis(1000), 50));
+    }
+
+    pacer.reset();
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(millis(2000), 50));
+
+    // A new stall gets the full five skips again.
+    long now = millis(3000);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(FramePacer.ACTION_SKIP, pacer.onFrameReady(now, 50));
+    }
+    assertEquals(FramePacer.ACTION_SHOW, pacer.onFrameReady(now, 50));
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) 2016-present, Facebook, Inc. All rights reserved.
+//
+// You are hereby granted a non-exclusive, worldwide, royalty-free license to use,
+// copy, modify, and distribute this software in source code or binary form for use
+// in connection with the web services and APIs provided by Facebook.
+//
+// As with any software that integrates with the Facebook platform, your use of
+// this software is subject to the Facebook Developer Principles and Policies
+// [http://developers.facebook.com/policy/]. This copyright notice shall be
+// included in all copies or substantial portions of the software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+// FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+// COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+// IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+// CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package com.facebook.notifications.internal.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.facebook.notifications.internal.utilities.AnimationDecoder;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GifViewTest {
+  // Far less than the 100ms onDraw used to wait for a frame.
+  private static final long MAX_DRAW_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  /**
+   * A decoder which doesn't finish decoding a frame until it is released.
+   */
+  private static class BlockingDecoder implements AnimationDecoder {
+    private final CountDownLatch decoding = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Override
+    public void advance() {
+    }
+
+    @Override
+    public int getNextDelay() {
+      return 100;
+    }
+
+    @Override
+    public Bitmap getNextFrame() {
+      decoding.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    }
+
+    @Override
+    public int getFrameCount() {
+      return 10;
+    }
+
+    @Override
+    public int getLoopCount() {
+      return 0;
+    }
+
+    @Override
+    public int getWidth() {
+      return 320;
+    }
+
+    @Override
+    public int getHeight() {
+      return 240;
+    }
+
+    @Override
+    public boolean setTargetSize(int targetWidth, int targetHeight) {
+      return false;
+    }
+
+    @Override
+    public int getByteCount() {
+      return 0;
+    }
+
+    @Override
+    public void recycle() {
+    }
+  }
+
+  @Test
+  public void testDrawDoesNotWaitForDecoding() throws InterruptedException {
+    BlockingDecoder decoder = new BlockingDecoder();
+    // Views don't use their context in unit tests.
+    GifView view = new GifView(null, decoder);
+    try {
+      // Laying out the view starts decoding the first frame.
+      view.onSizeChanged(320, 240, 0, 0);
+      assertTrue(decoder.decoding.await(5, TimeUnit.SECONDS));
+
+      Canvas canvas = new Canvas();
+      for (int i = 0; i < 10; i++) {
+        view.onDraw(canvas);
+      }
+
+      assertEquals(10, view.getDrawCount());
+      assertTrue("onDraw took " + view.getMaxDrawTimeNanos() + "ns",
+        view.getMaxDrawTimeNanos() < MAX_DRAW_TIME_NANOS);
+      assertTrue(view.getTotalDrawTimeNanos() >= view.getMaxDrawTimeNanos());
+    } finally {
+      decoder.released.countDown();
+    }
+  }
+}